@@ -0,0 +1,117 @@
+package com.stocksim.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Holds the tunable settings of a simulation run. Values come from an optional
+ * properties file (passed with -Dsim.config=path) and can be overridden one by
+ * one with -D system properties, so a quick experiment doesn't need a new file.
+ */
+public class SimulationConfig {
+
+    public static final String CONFIG_FILE_PROPERTY = "sim.config";
+
+    private static final String DEFAULT_SYMBOLS = "AAPL,GOOG,TSLA";
+    private static final String DEFAULT_STRATEGY_MIX = "marketmaker:2,momentum:1,meanreversion:1";
+
+    private final Properties properties;
+
+    public SimulationConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Loads the config file named by -Dsim.config (if any) and then lays the
+     * JVM system properties on top of it.
+     */
+    public static SimulationConfig load() throws IOException {
+        Properties properties = new Properties();
+        String configFile = System.getProperty(CONFIG_FILE_PROPERTY);
+        if (configFile != null) {
+            try (InputStream in = Files.newInputStream(Paths.get(configFile))) {
+                properties.load(in);
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("sim.")) {
+                properties.setProperty(key, System.getProperty(key));
+            }
+        }
+        return new SimulationConfig(properties);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * The symbol universe. Either an explicit list (sim.symbols=AAPL,GOOG) or,
+     * for load tests, a generated one (sim.symbols.count=5000 gives SYM0..SYM4999).
+     */
+    public List<String> getSymbols() {
+        int generatedCount = getInt("sim.symbols.count", 0);
+        if (generatedCount > 0) {
+            List<String> symbols = new ArrayList<>(generatedCount);
+            for (int i = 0; i < generatedCount; i++) {
+                symbols.add("SYM" + i);
+            }
+            return symbols;
+        }
+        List<String> symbols = new ArrayList<>();
+        for (String symbol : getString("sim.symbols", DEFAULT_SYMBOLS).split(",")) {
+            if (!symbol.trim().isEmpty()) {
+                symbols.add(symbol.trim());
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * The strategy mix as name -> weight, e.g. "marketmaker:2,momentum:1".
+     * A name without a weight counts once.
+     */
+    public Map<String, Integer> getStrategyMix() {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String entry : getString("sim.strategy.mix", DEFAULT_STRATEGY_MIX).split(",")) {
+            if (entry.trim().isEmpty()) continue;
+            String[] parts = entry.trim().split(":");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (weight > 0) {
+                mix.merge(parts[0].trim().toLowerCase(), weight, Integer::sum);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("sim.strategy.mix must name at least one strategy");
+        }
+        return mix;
+    }
+}
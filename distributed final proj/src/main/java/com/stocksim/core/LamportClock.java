@@ -14,6 +14,14 @@ public class LamportClock implements Serializable {
         this.time = 0;
     }
 
+    /**
+     * Creates a clock that resumes from a saved time, e.g. after loading a snapshot.
+     * @param time The logical time to start from.
+     */
+    public LamportClock(long time) {
+        this.time = time;
+    }
+
     /**
      * Increments the local clock for an internal event.
      */
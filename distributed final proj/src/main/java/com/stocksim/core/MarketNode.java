@@ -1,22 +1,53 @@
 package com.stocksim.core;
 
+import com.stocksim.config.SimulationConfig;
 import com.stocksim.data.*;
+import com.stocksim.metrics.CausalTrace;
 import com.stocksim.metrics.Metrics;
 import com.stocksim.net.HeartbeatMonitor;
+import com.stocksim.net.MarketDataListener;
 import com.stocksim.net.MarketNodeRemote;
+import com.stocksim.net.ServiceRegistry;
+import com.stocksim.persistence.MarketSnapshot;
+import com.stocksim.persistence.MessageJournal;
+import com.stocksim.persistence.SnapshotStore;
+import com.sun.net.httpserver.HttpServer;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This is the main server for the whole simulation. It's the central point
  * that all the agents talk to. I used RMI for the remote communication.
+ *
+ * All market state is owned by a single writer thread. RMI threads only do
+ * admission control (a token bucket per agent and bounded intake queues) and
+ * hand accepted messages to the writer, so a burst of agents gets told to back
+ * off instead of piling up on a lock.
  */
 public class MarketNode extends UnicastRemoteObject implements MarketNodeRemote {
 
@@ -24,24 +55,139 @@ public class MarketNode extends UnicastRemoteObject implements MarketNodeRemote
     private static final int METRICS_PORT = 8080;
     private static final int MAX_TRADES_IN_STATE = 50;
     private static final long AGENT_TIMEOUT_MS = 10000; // 10 seconds
+    private static final int MARKET_DATA_QUEUE_SIZE = 10000;
+    private static final int MAX_MARKET_DATA_BATCH = 500;
+    private static final int SNAPSHOTS_RETAINED = 2;
+
+    private static final double AVG_SERVICE_SMOOTHING = 0.05;
+    // How much longer than maxQueueWaitMs an agent waits for its answer before
+    // it's told to retry. The writer sheds anything older than maxQueueWaitMs
+    // anyway, so only a stuck or dead writer gets this far.
+    private static final long REPLY_MARGIN_MS = 1000;
 
     private final String nodeId;
     private final LamportClock clock;
-    // Using CopyOnWriteArrayList for the trade log since it's mostly reads
-    // and I don't want to lock it every time the UI polls for state.
-    private final List<Trade> tradeLog;
+    // The last few trades, for the UI and snapshots. Only the writer thread
+    // touches it; everyone else reads the published SystemState instead.
+    private final Deque<Trade> recentTrades;
     private final HeartbeatMonitor monitor;
     private final Map<String, String> agentStatuses;
+    // Trades waiting to be pushed to subscribers. Bounded, because market data
+    // is best-effort and I never want a slow subscriber to hold up matching.
+    private final BlockingQueue<Trade> marketDataQueue;
+    private final List<MarketDataListener> subscribers;
+    // One book per symbol, plus an index from order ID straight to the resting
+    // order so cancels and replaces don't have to search. Both are only used
+    // by the writer thread, so plain HashMaps are fine.
+    private final Map<String, OrderBook> books;
+    private final Map<String, OrderBook.Entry> orderIndex;
+    // Net position per agent and symbol, also only touched by the writer thread.
+    private final Map<String, Map<String, Long>> positions;
+
+    // Persistence: every accepted message goes into the journal with a sequence
+    // number, and every so often a snapshot is taken. On startup I load the
+    // newest snapshot and only replay the journal after it. All null when
+    // persistence is switched off.
+    private final Path stateDirectory;
+    private final SnapshotStore snapshotStore;
+    private final long snapshotIntervalMs;
+    private MessageJournal journal;
+    private long sequence;
+    private volatile long lastSnapshotSequence;
+    private long previousSnapshotSequence = -1;
+
+    // Admission control. Heartbeats and orders have separate bounded queues and
+    // the writer always takes heartbeats (and internal tasks) first. The
+    // semaphore counts how many items are waiting across all the queues.
+    private final Queue<Runnable> controlQueue;
+    private final BlockingQueue<Inbound> heartbeatQueue;
+    private final BlockingQueue<Inbound> orderQueue;
+    private final Semaphore pending;
+    private final Map<String, TokenBucket> rateLimits;
+    private final ServiceRegistry serviceRegistry;
+    private final double ordersPerSecond;
+    private final int orderBurst;
+    private final long maxQueueWaitMs;
+    private final long minRetryAfterMs;
+    private final long maxRetryAfterMs;
+    // Smoothed time the writer spends per message, used to size retry-after hints.
+    private volatile double avgServiceNanos;
 
-    public MarketNode() throws RemoteException {
+    // The SystemState the UI sees is rebuilt in the background and shared by
+    // every reader. stateChanges is bumped whenever something visible changes.
+    private final long statePublishIntervalMs;
+    private final AtomicLong stateChanges;
+    private final long firstStateVersion;
+    private volatile PublishedState publishedState;
+
+    // Optional causality tracking: a vector clock stamped on trades and replies,
+    // and a causal trace file. Only the writer thread uses them, and both are
+    // null when sim.causality.enabled is off. currentEvent belongs to the
+    // message being processed; every trade it causes happens in that event.
+    private final VectorClock vectorClock;
+    private final CausalTrace trace;
+    private String currentEvent;
+
+    public MarketNode(SimulationConfig config) throws IOException {
         super();
         this.nodeId = "market-node-01";
-        this.clock = new LamportClock();
-        this.tradeLog = new CopyOnWriteArrayList<>();
+        this.snapshotIntervalMs = config.getLong("sim.snapshot.intervalMs", 30000);
+        if (config.getBoolean("sim.persistence.enabled", true)) {
+            this.stateDirectory = Paths.get(config.getString("sim.persistence.dir", "market-state"));
+            this.snapshotStore = new SnapshotStore(stateDirectory, SNAPSHOTS_RETAINED);
+        } else {
+            this.stateDirectory = null;
+            this.snapshotStore = null;
+        }
+        MarketSnapshot snapshot = snapshotStore == null ? null : snapshotStore.loadLatest();
+        this.clock = new LamportClock(snapshot == null ? 0 : snapshot.getLamportTime());
+        this.recentTrades = new ArrayDeque<>(MAX_TRADES_IN_STATE);
         this.monitor = new HeartbeatMonitor();
         this.agentStatuses = new ConcurrentHashMap<>();
+        this.marketDataQueue = new ArrayBlockingQueue<>(MARKET_DATA_QUEUE_SIZE);
+        this.subscribers = new CopyOnWriteArrayList<>();
+        this.books = new HashMap<>();
+        this.orderIndex = new HashMap<>();
+        this.positions = new HashMap<>();
+        this.controlQueue = new ConcurrentLinkedQueue<>();
+        this.heartbeatQueue = new ArrayBlockingQueue<>(config.getInt("sim.admission.heartbeatQueueSize", 1000));
+        this.orderQueue = new ArrayBlockingQueue<>(config.getInt("sim.admission.queueSize", 10000));
+        this.pending = new Semaphore(0);
+        this.rateLimits = new ConcurrentHashMap<>();
+        this.serviceRegistry = new ServiceRegistry(config.getLong("sim.discovery.ttlMs", 30000));
+        this.ordersPerSecond = config.getDouble("sim.admission.ordersPerSecond", 200);
+        this.orderBurst = config.getInt("sim.admission.burst", 50);
+        this.maxQueueWaitMs = config.getLong("sim.admission.maxQueueWaitMs", 2000);
+        this.minRetryAfterMs = config.getLong("sim.admission.minRetryAfterMs", 20);
+        this.maxRetryAfterMs = config.getLong("sim.admission.maxRetryAfterMs", 1000);
+        this.statePublishIntervalMs = config.getLong("sim.state.publishIntervalMs", 500);
+        this.stateChanges = new AtomicLong();
+        boolean causality = config.getBoolean("sim.causality.enabled", false);
+        VectorTimestamp savedVector = snapshot == null ? null : snapshot.getVectorTime();
+        this.vectorClock = causality ? new VectorClock(nodeId, savedVector == null ? VectorTimestamp.EMPTY : savedVector) : null;
 
-        Metrics.startMetricsServer(METRICS_PORT);
+        if (stateDirectory != null) {
+            recover(snapshot);
+            this.journal = new MessageJournal(stateDirectory, sequence + 1);
+        }
+        // Opened after recovery, so replayed messages don't show up in the trace twice.
+        this.trace = causality
+                ? new CausalTrace(Paths.get(config.getString("sim.causality.traceDir", "traces")), nodeId)
+                : null;
+        if (trace != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(trace::close, "causal-trace-close"));
+        }
+        // Versions start from the start time in the high bits, so they keep going
+        // up across restarts and a UI that missed the restart still takes the new
+        // state. The low 20 bits leave room for a million states per millisecond.
+        this.firstStateVersion = System.currentTimeMillis() << 20;
+        this.publishedState = buildPublishedState(firstStateVersion, new ArrayList<>(recentTrades));
+
+        // The service discovery list for Prometheus is served next to my own /metrics.
+        HttpServer metricsServer = Metrics.startMetricsServer(METRICS_PORT);
+        if (metricsServer != null) {
+            metricsServer.createContext(ServiceRegistry.HTTP_PATH, serviceRegistry);
+        }
         Metrics.NODE_STATUS.labels(this.nodeId).set(1);
         tick();
 
@@ -51,7 +197,28 @@ public class MarketNode extends UnicastRemoteObject implements MarketNodeRemote
         failureDetectorThread.setDaemon(true);
         failureDetectorThread.start();
 
-        System.out.println("MarketNode initialized. Failure detector started.");
+        // This is the only thread that touches the books and the journal.
+        Thread writerThread = new Thread(this::runWriter, "market-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        // Market data goes out on its own thread too, since the RMI callbacks
+        // to the agents can be slow and I don't want the writer waiting on them.
+        Thread publisherThread = new Thread(this::runMarketDataPublisher);
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+
+        Thread statePublisherThread = new Thread(this::runStatePublisher);
+        statePublisherThread.setDaemon(true);
+        statePublisherThread.start();
+
+        if (journal != null) {
+            Thread snapshotThread = new Thread(this::runSnapshotter);
+            snapshotThread.setDaemon(true);
+            snapshotThread.start();
+        }
+
+        System.out.println("MarketNode initialized. Writer, failure detector and market data publisher started.");
     }
 
     // Just a helper to tick my clock and update the metric at the same time.
@@ -77,7 +244,9 @@ public class MarketNode extends UnicastRemoteObject implements MarketNodeRemote
                         Metrics.FAILURES_DETECTED_TOTAL.inc();
                         Metrics.NODE_STATUS.labels(agentId).set(0);
                     }
-                    agentStatuses.put(agentId, currentStatus);
+                    if (!currentStatus.equals(agentStatuses.put(agentId, currentStatus))) {
+                        stateChanges.incrementAndGet(); // new agent or a status flip, so the UI needs it
+                    }
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -85,15 +254,306 @@ public class MarketNode extends UnicastRemoteObject implements MarketNodeRemote
         }
     }
 
+    // Background loop that pushes trades to subscribers in batches.
+    private void runMarketDataPublisher() {
+        List<Trade> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(marketDataQueue.take());
+                marketDataQueue.drainTo(batch, MAX_MARKET_DATA_BATCH - 1);
+                for (MarketDataListener subscriber : subscribers) {
+                    try {
+                        subscriber.onTrades(batch);
+                    } catch (RemoteException e) {
+                        // The agent process is gone, so stop sending to it.
+                        System.out.printf("MarketNode: Dropping market data subscriber (%s)%n", e.getMessage());
+                        subscribers.remove(subscriber);
+                    }
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Loads the snapshot (if there is one) and replays the journal after it.
+    private void recover(MarketSnapshot snapshot) throws IOException {
+        long start = System.currentTimeMillis();
+        if (snapshot != null) {
+            sequence = snapshot.getSequence();
+            for (Order order : snapshot.getRestingOrders()) {
+                OrderBook book = books.computeIfAbsent(order.getStockSymbol(), OrderBook::new);
+                orderIndex.put(order.getOrderId(), book.add(order, order.getQuantity()));
+            }
+            for (Map.Entry<String, Map<String, Long>> entry : snapshot.getPositions().entrySet()) {
+                positions.put(entry.getKey(), new HashMap<>(entry.getValue()));
+            }
+            monitor.restore(snapshot.getLastHeartbeats());
+            recentTrades.addAll(snapshot.getRecentTrades());
+        }
+        long snapshotSequence = sequence;
+        MessageJournal.replay(stateDirectory, sequence, (seq, message) -> {
+            sequence = seq;
+            try {
+                process(message);
+            } catch (RuntimeException e) {
+                // It failed the same way when it first came in; that agent got
+                // an error back then and the market carried on, so I do too.
+                System.err.printf("MarketNode: Journaled message #%d failed again on replay: %s%n", seq, e);
+            }
+        });
+        lastSnapshotSequence = snapshotSequence;
+        Metrics.RESTING_ORDERS.set(orderIndex.size());
+        System.out.printf("MarketNode: Recovered state from %s (snapshot at #%d, replayed %d journaled messages) in %d ms.%n",
+                stateDirectory, snapshotSequence, sequence - snapshotSequence, System.currentTimeMillis() - start);
+    }
+
+    // Background loop that takes a snapshot every snapshotIntervalMs.
+    private void runSnapshotter() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(snapshotIntervalMs);
+                takeSnapshot();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                System.err.println("MarketNode: Snapshot failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Takes a checkpoint at the current sequence number. The writer thread only
+     * copies the state and starts a new journal segment in between two messages;
+     * encoding and writing the file happen here on the snapshot thread, so order
+     * processing only stalls for the in-memory copy, not for the disk.
+     */
+    private void takeSnapshot() throws IOException {
+        MarketSnapshot snapshot = runOnWriter(() -> {
+            if (sequence == lastSnapshotSequence) return null; // nothing new since the last one
+            MarketSnapshot captured = captureSnapshot();
+            journal.rotate(sequence + 1);
+            return captured;
+        });
+        if (snapshot == null) return;
+        long start = System.currentTimeMillis();
+        snapshotStore.write(snapshot);
+        lastSnapshotSequence = snapshot.getSequence();
+        // I keep the journal back to the previous snapshot too, so if the newest
+        // file turns out to be corrupt the older one can still be replayed forward.
+        if (previousSnapshotSequence >= 0) {
+            journal.deleteSegmentsCoveredBy(previousSnapshotSequence);
+        }
+        previousSnapshotSequence = snapshot.getSequence();
+        System.out.printf("MarketNode: Wrote snapshot #%d (%d resting orders) in %d ms.%n",
+                snapshot.getSequence(), snapshot.getRestingOrders().size(), System.currentTimeMillis() - start);
+    }
+
+    // Copies everything a snapshot needs. Must run on the writer thread.
+    private MarketSnapshot captureSnapshot() {
+        List<Order> restingOrders = new ArrayList<>(orderIndex.size());
+        for (OrderBook book : books.values()) {
+            book.forEachResting(entry -> restingOrders.add(
+                    entry.getOrder().withQuantityAndPrice(entry.getRemaining(), entry.getOrder().getPrice())));
+        }
+        Map<String, Map<String, Long>> positionsCopy = new HashMap<>();
+        for (Map.Entry<String, Map<String, Long>> entry : positions.entrySet()) {
+            positionsCopy.put(entry.getKey(), new HashMap<>(entry.getValue()));
+        }
+        return new MarketSnapshot(sequence, clock.getTime(), restingOrders, positionsCopy,
+                monitor.getLastSeenTimestamps(), new ArrayList<>(recentTrades),
+                vectorClock == null ? null : vectorClock.snapshot());
+    }
+
     /**
-     * This is the main RMI entry point. I synchronized it to be safe,
-     * so I only process one agent message at a time. It keeps the state
+     * This is the main RMI entry point. It no longer touches the market state
+     * itself: it does admission control and hands the message to the writer
+     * thread, which processes one message at a time. That keeps the state
      * consistent without needing more complex locks.
+     * @return An execution report for ORDER/CANCEL/REPLACE (THROTTLED with a
+     *         retry-after if the market is overloaded), null for a heartbeat.
      */
     @Override
-    public synchronized void submitMessage(TradeMessage message) throws RemoteException {
+    public ExecutionReport submitMessage(TradeMessage message) throws RemoteException {
         Metrics.MESSAGES_RECEIVED_TOTAL.labels(this.nodeId).inc();
 
+        if (message.getType() == MessageType.HEARTBEAT) {
+            // Liveness is recorded right here on the RMI thread, so a backed-up
+            // order queue can never make a live agent look FAILED. The writer
+            // still gets the heartbeat for the clock and the journal.
+            monitor.updateHeartbeat(message.getSenderId());
+            // If an agent was marked down, a heartbeat brings it back online in the metrics.
+            Metrics.NODE_STATUS.labels(message.getSenderId()).set(1);
+            if (heartbeatQueue.offer(new Inbound(message))) {
+                pending.release();
+            } else {
+                shed(message, "queue_full");
+            }
+            return null;
+        }
+
+        long retryAfterMs = rateLimits.computeIfAbsent(message.getSenderId(),
+                id -> new TokenBucket(ordersPerSecond, orderBurst)).tryAcquire();
+        if (retryAfterMs > 0) {
+            return throttle(message, "rate_limit", Math.max(minRetryAfterMs, retryAfterMs));
+        }
+        Inbound inbound = new Inbound(message);
+        if (!orderQueue.offer(inbound)) {
+            return throttle(message, "queue_full", estimateQueueDrainMs());
+        }
+        pending.release();
+        try {
+            try {
+                return inbound.result.get(maxQueueWaitMs + REPLY_MARGIN_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // If the writer hasn't picked the order up yet, I take it back so
+                // it can never be applied after the agent was told to retry.
+                if (inbound.claimed.compareAndSet(false, true)) {
+                    return throttle(message, "stale", estimateQueueDrainMs());
+                }
+                // It's being applied right now, so the agent has to hear the outcome.
+                return inbound.result.get(REPLY_MARGIN_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the market", e);
+        } catch (ExecutionException e) {
+            throw new RemoteException("MarketNode failed to process message", e.getCause());
+        } catch (TimeoutException e) {
+            throw new RemoteException("MarketNode did not finish processing the message in time", e);
+        }
+    }
+
+    // The writer loop. Internal tasks go first, then heartbeats, then orders.
+    private void runWriter() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            Inbound inbound = null;
+            try {
+                Runnable task = controlQueue.poll();
+                if (task != null) {
+                    task.run();
+                    continue;
+                }
+                inbound = heartbeatQueue.poll();
+                if (inbound == null) {
+                    inbound = orderQueue.poll();
+                }
+                if (inbound != null) {
+                    handleInbound(inbound);
+                }
+            } catch (Throwable t) {
+                // If this thread dies, every agent hangs and nothing ever gets
+                // applied again, so I log whatever went wrong and keep going.
+                System.err.println("MarketNode: Writer task failed: " + t);
+                t.printStackTrace();
+                if (inbound != null) {
+                    inbound.result.completeExceptionally(t);
+                }
+            }
+        }
+    }
+
+    private void handleInbound(Inbound inbound) {
+        TradeMessage message = inbound.message;
+        long start = System.nanoTime();
+        double waitedMs = (start - inbound.enqueuedNanos) / 1_000_000.0;
+        Metrics.QUEUE_WAIT_SECONDS.labels(message.getType().toString()).observe(waitedMs / 1000.0);
+        Metrics.INBOUND_QUEUE_DEPTH.labels("heartbeat").set(heartbeatQueue.size());
+        Metrics.INBOUND_QUEUE_DEPTH.labels("order").set(orderQueue.size());
+        if (!inbound.claimed.compareAndSet(false, true)) {
+            return; // the agent gave up waiting and was already told to retry
+        }
+
+        // If an order sat in the queue this long, the agent's view of the market
+        // is stale anyway, so I'd rather tell it to retry than act on it.
+        if (message.getType() != MessageType.HEARTBEAT && waitedMs > maxQueueWaitMs) {
+            inbound.result.complete(throttle(message, "stale", estimateQueueDrainMs()));
+            return;
+        }
+        if (journal != null) {
+            try {
+                journal.append(sequence + 1, message);
+            } catch (IOException e) {
+                // A message that isn't in the journal must not change the state,
+                // or a restart would come back with something different.
+                System.err.printf("MarketNode: Could not journal message #%d, not applying it: %s%n",
+                        sequence + 1, e.getMessage());
+                inbound.result.complete(message.getType() == MessageType.HEARTBEAT ? null
+                        : reject(message.getOrder() == null ? null : message.getOrder().getOrderId(), "could not journal message"));
+                return;
+            }
+        }
+        try {
+            sequence++;
+            ExecutionReport report = process(message);
+            if (report != null && vectorClock != null) {
+                // The reply is part of the same event as the request, so no new tick.
+                report = report.withVectorTimestamp(nodeId, vectorClock.changesFor(message.getSenderId()),
+                        CausalTrace.currentTimeMicros());
+            }
+            inbound.result.complete(report);
+        } catch (RuntimeException e) {
+            inbound.result.completeExceptionally(e);
+        }
+        long serviceNanos = System.nanoTime() - start;
+        avgServiceNanos += AVG_SERVICE_SMOOTHING * (serviceNanos - avgServiceNanos);
+    }
+
+    /**
+     * Runs a task on the writer thread ahead of any queued messages and waits
+     * for its result. This is how other threads get a consistent view of state.
+     */
+    private <T> T runOnWriter(Callable<T> task) throws IOException {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        controlQueue.add(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } catch (Error e) {
+                result.completeExceptionally(e);
+                throw e;
+            }
+        });
+        pending.release();
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the writer thread", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    // Roughly how long the writer needs to work through the order queue. Capped,
+    // because one slow message can blow up the average and agents sleep this long.
+    private long estimateQueueDrainMs() {
+        long drainMs = (long) (orderQueue.size() * avgServiceNanos / 1_000_000.0);
+        return Math.min(maxRetryAfterMs, Math.max(minRetryAfterMs, drainMs));
+    }
+
+    private ExecutionReport throttle(TradeMessage message, String reason, long retryAfterMs) {
+        shed(message, reason);
+        String orderId = message.getOrder() == null ? null : message.getOrder().getOrderId();
+        return new ExecutionReport(orderId, ExecutionStatus.THROTTLED, 0, 0, Collections.emptyList(),
+                reason, clock.getTime(), retryAfterMs);
+    }
+
+    private void shed(TradeMessage message, String reason) {
+        Metrics.SHED_TOTAL.labels(message.getType().toString(), reason).inc();
+    }
+
+    // Applies one message to the market state. Used both for live messages and
+    // when replaying the journal on startup.
+    private ExecutionReport process(TradeMessage message) {
         System.out.printf("MarketNode: Local clock before receiving message from %s (LT=%d): %d%n",
                 message.getSenderId(), message.getLamportTimestamp(), clock.getTime());
         
@@ -103,60 +563,302 @@ public class MarketNode extends UnicastRemoteObject implements MarketNodeRemote
         Metrics.LAMPORT_CLOCK.labels(this.nodeId).set(this.clock.getTime());
         
         System.out.printf("MarketNode: Local clock after updateOnReceive: %d%n", clock.getTime());
+        if (vectorClock != null) {
+            receiveCausally(message);
+        }
 
+        ExecutionReport report = null;
         switch (message.getType()) {
             case ORDER:
-                handleOrder(message);
+                report = handleOrder(message);
+                break;
+            case CANCEL:
+                report = handleCancel(message);
+                break;
+            case REPLACE:
+                report = handleReplace(message);
                 break;
             case HEARTBEAT:
                 handleHeartbeat(message);
                 break;
         }
+        if (report != null) {
+            Metrics.ORDER_REQUESTS_TOTAL.labels(message.getType().toString(), report.getStatus().toString()).inc();
+            Metrics.RESTING_ORDERS.set(orderIndex.size());
+        }
+        return report;
     }
 
-    // Handles an ORDER message.
-    private void handleOrder(TradeMessage message) {
+    // The vector clock side of receiving a message: merge the sender's vector,
+    // and log the edge from the sender's send event to this receive event.
+    private void receiveCausally(TradeMessage message) {
+        VectorTimestamp received = message.getVectorTimestamp();
+        long time = vectorClock.updateOnReceive(message.getSenderId(), received == null ? VectorTimestamp.EMPTY : received);
+        currentEvent = CausalTrace.eventId(nodeId, time);
+        long sendTime = received == null ? 0 : received.get(message.getSenderId());
+        if (trace != null && sendTime > 0) {
+            trace.receive(CausalTrace.eventId(message.getSenderId(), sendTime), currentEvent,
+                    message.getType().toString(), message.getOrder() == null ? null : message.getOrder().getOrderId(),
+                    null, message.getSentAtMicros());
+        }
+    }
+
+    // Handles a new ORDER: match it against the book and rest whatever is left.
+    private ExecutionReport handleOrder(TradeMessage message) {
         Order order = message.getOrder();
-        if (order == null) return;
-
-        Metrics.TRADES_TOTAL.labels(order.getType().toString()).inc();
-
-        // I didn't build a real order book. For this simulation, I'm just
-        // treating every order as an instant trade. The main point is to
-        // log it with the correct Lamport timestamp.
-        Trade executedTrade = new Trade(
-                UUID.randomUUID().toString(),
-                order.getAgentId(),
-                order.getStockSymbol(),
-                order.getQuantity(),
-                order.getPrice(),
+        if (order == null || order.getOrderId() == null) {
+            return reject(null, "order has no order ID");
+        }
+        if (order.getType() == null || order.getStockSymbol() == null) {
+            return reject(order.getOrderId(), "order needs a side and a symbol");
+        }
+        if (order.getQuantity() <= 0 || order.getPrice() <= 0) {
+            return reject(order.getOrderId(), "quantity and price must be positive");
+        }
+        if (orderIndex.containsKey(order.getOrderId())) {
+            return reject(order.getOrderId(), "duplicate order ID");
+        }
+        ExecutionReport report = execute(order, false);
+        System.out.printf("[LT=%d] MarketNode: Processed %s order %s from %s (Msg LT=%d): %s%n",
+                clock.getTime(), order.getType(), order.getOrderId(), order.getAgentId(),
+                message.getLamportTimestamp(), report.getStatus());
+        return report;
+    }
+
+    // Handles a CANCEL. The order-ID index makes this O(1) no matter how deep the book is.
+    private ExecutionReport handleCancel(TradeMessage message) {
+        Order order = message.getOrder();
+        OrderBook.Entry resting = findOwnOrder(message);
+        if (resting == null) {
+            return reject(order == null ? null : order.getOrderId(), "unknown order");
+        }
+        books.get(resting.getOrder().getStockSymbol()).remove(resting);
+        orderIndex.remove(order.getOrderId());
+        System.out.printf("[LT=%d] MarketNode: Canceled order %s from %s (Msg LT=%d)%n",
+                clock.getTime(), order.getOrderId(), message.getSenderId(), message.getLamportTimestamp());
+        return new ExecutionReport(order.getOrderId(), ExecutionStatus.CANCELED, 0, 0,
+                Collections.emptyList(), null, clock.getTime());
+    }
+
+    // Handles a REPLACE. The quantity in the message is the new open quantity.
+    // Shrinking an order at the same price keeps its queue position, anything
+    // else is treated like cancel + new, so it goes to the back and may trade.
+    private ExecutionReport handleReplace(TradeMessage message) {
+        Order replacement = message.getOrder();
+        OrderBook.Entry resting = findOwnOrder(message);
+        if (resting == null) {
+            return reject(replacement == null ? null : replacement.getOrderId(), "unknown order");
+        }
+        Order original = resting.getOrder();
+        if (original.getType() != replacement.getType() || !original.getStockSymbol().equals(replacement.getStockSymbol())) {
+            return reject(replacement.getOrderId(), "replace cannot change side or symbol");
+        }
+        if (replacement.getQuantity() <= 0 || replacement.getPrice() <= 0) {
+            return reject(replacement.getOrderId(), "quantity and price must be positive");
+        }
+
+        OrderBook book = books.get(original.getStockSymbol());
+        ExecutionReport report;
+        if (replacement.getPrice() == original.getPrice() && replacement.getQuantity() <= resting.getRemaining()) {
+            book.reduce(resting, replacement.getQuantity());
+            resting.setOriginEvent(currentEvent);
+            report = new ExecutionReport(replacement.getOrderId(), ExecutionStatus.REPLACED, 0,
+                    replacement.getQuantity(), Collections.emptyList(), null, clock.getTime());
+        } else {
+            book.remove(resting);
+            orderIndex.remove(replacement.getOrderId());
+            report = execute(replacement, true);
+        }
+        System.out.printf("[LT=%d] MarketNode: Replaced order %s from %s (Msg LT=%d): %s%n",
+                clock.getTime(), replacement.getOrderId(), message.getSenderId(),
+                message.getLamportTimestamp(), report.getStatus());
+        return report;
+    }
+
+    // Looks up the resting order a CANCEL/REPLACE refers to. Agents can only
+    // touch their own orders.
+    private OrderBook.Entry findOwnOrder(TradeMessage message) {
+        Order order = message.getOrder();
+        if (order == null || order.getOrderId() == null) return null;
+        OrderBook.Entry resting = orderIndex.get(order.getOrderId());
+        if (resting == null || !resting.getOrder().getAgentId().equals(message.getSenderId())) return null;
+        return resting;
+    }
+
+    // Matches an order against its book, records the trades and rests the remainder.
+    private ExecutionReport execute(Order order, boolean replaced) {
+        OrderBook book = books.computeIfAbsent(order.getStockSymbol(), OrderBook::new);
+        List<Trade> fills = new ArrayList<>();
+        int remaining = book.match(order, order.getQuantity(), (resting, quantity, price) -> {
+            if (resting.getRemaining() == 0) {
+                orderIndex.remove(resting.getOrder().getOrderId());
+            }
+            fills.add(recordTrade(order, resting, quantity, price));
+        });
+        if (remaining > 0) {
+            OrderBook.Entry entry = book.add(order, remaining);
+            entry.setOriginEvent(currentEvent);
+            orderIndex.put(order.getOrderId(), entry);
+        }
+
+        ExecutionStatus status;
+        if (remaining == 0) {
+            status = ExecutionStatus.FILLED;
+        } else if (replaced) {
+            status = ExecutionStatus.REPLACED;
+        } else {
+            status = fills.isEmpty() ? ExecutionStatus.NEW : ExecutionStatus.PARTIALLY_FILLED;
+        }
+        return new ExecutionReport(order.getOrderId(), status, order.getQuantity() - remaining, remaining,
+                fills, null, clock.getTime());
+    }
+
+    // Every fill is its own event on my clock, so each trade gets a unique Lamport timestamp.
+    private Trade recordTrade(Order aggressor, OrderBook.Entry restingEntry, int quantity, double price) {
+        Order resting = restingEntry.getOrder();
+        tick();
+        Trade trade = new Trade(
+                // Every trade has its own Lamport time here, so this is unique and
+                // comes out the same when the journal is replayed.
+                nodeId + "-" + clock.getTime(),
+                aggressor.getAgentId(),
+                resting.getAgentId(),
+                aggressor.getOrderId(),
+                resting.getOrderId(),
+                aggressor.getType(),
+                aggressor.getStockSymbol(),
+                quantity,
+                price,
                 clock.getTime(), // This is the official timestamp of the trade.
-                System.currentTimeMillis()
+                System.currentTimeMillis(),
+                vectorClock == null ? null : vectorClock.stamp(aggressor.getAgentId(), resting.getAgentId())
         );
-        tradeLog.add(executedTrade);
-        System.out.printf("[LT=%d] MarketNode: Processed %s order from %s (Msg LT=%d)%n",
-                clock.getTime(), order.getType(), order.getAgentId(), message.getLamportTimestamp());
+        if (trace != null) {
+            trace.trade(trade.getTradeId(), currentEvent, restingEntry.getOriginEvent(),
+                    trade.getStockSymbol(), quantity, price);
+        }
+        Metrics.TRADES_TOTAL.labels(aggressor.getType().toString()).inc();
+        long signedQuantity = aggressor.getType() == OrderType.BUY ? quantity : -quantity;
+        positions.computeIfAbsent(aggressor.getAgentId(), a -> new HashMap<>())
+                .merge(aggressor.getStockSymbol(), signedQuantity, Long::sum);
+        positions.computeIfAbsent(resting.getAgentId(), a -> new HashMap<>())
+                .merge(aggressor.getStockSymbol(), -signedQuantity, Long::sum);
+        recentTrades.addLast(trade);
+        if (recentTrades.size() > MAX_TRADES_IN_STATE) {
+            recentTrades.removeFirst();
+        }
+        stateChanges.incrementAndGet();
+        publish(trade);
+        return trade;
     }
 
-    // Handles a HEARTBEAT by just resetting the agent's timer in the monitor.
+    private ExecutionReport reject(String orderId, String reason) {
+        System.out.printf("[LT=%d] MarketNode: Rejected order %s: %s%n", clock.getTime(), orderId, reason);
+        return new ExecutionReport(orderId, ExecutionStatus.REJECTED, 0, 0, Collections.emptyList(), reason, clock.getTime());
+    }
+
+    // Handles a HEARTBEAT. Liveness was already recorded when it arrived (see
+    // submitMessage); doing it here too would make journal replay stamp agents
+    // that died before a crash with the restart time and show them as ACTIVE.
     private void handleHeartbeat(TradeMessage message) {
-        monitor.updateHeartbeat(message.getSenderId());
-        // If an agent was marked down, a heartbeat brings it back online in the metrics.
-        Metrics.NODE_STATUS.labels(message.getSenderId()).set(1);
         System.out.printf("[LT=%d] MarketNode: Received heartbeat from %s (Msg LT=%d)%n",
                 clock.getTime(), message.getSenderId(), message.getLamportTimestamp());
     }
 
+    // Queues a trade for the market data publisher. If nobody is subscribed
+    // or the queue is full, the trade just isn't published.
+    private void publish(Trade trade) {
+        if (!subscribers.isEmpty()) {
+            marketDataQueue.offer(trade);
+        }
+    }
+
+    @Override
+    public void registerAgentProcess(AgentProcess process) throws RemoteException {
+        serviceRegistry.register(process);
+    }
+
+    /**
+     * Registers an agent process for market data. Each process subscribes once
+     * and fans the trades out to its own agents.
+     */
+    @Override
+    public void subscribe(MarketDataListener listener) throws RemoteException {
+        subscribers.add(listener);
+        System.out.printf("MarketNode: New market data subscriber (%d total)%n", subscribers.size());
+    }
+
+    // Background loop that rebuilds the published SystemState, at most once
+    // every statePublishIntervalMs and only if something visible changed.
+    private void runStatePublisher() {
+        long publishedChanges = stateChanges.get();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(statePublishIntervalMs);
+                long changes = stateChanges.get();
+                if (changes == publishedChanges) continue;
+                List<Trade> trades = runOnWriter(() -> new ArrayList<>(recentTrades));
+                publishedState = buildPublishedState(publishedState.state.getVersion() + 1, trades);
+                publishedChanges = changes;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                System.err.println("MarketNode: Could not publish state: " + e.getMessage());
+            }
+        }
+    }
+
+    // Builds and serializes a SystemState once, so every reader can share the bytes.
+    // I'm only sending the last 50 trades to keep the UI from lagging
+    // if the simulation runs for a long time.
+    private PublishedState buildPublishedState(long version, List<Trade> trades) throws IOException {
+        SystemState state = new SystemState(version, trades, monitor.getStatuses(AGENT_TIMEOUT_MS), "UP");
+        Metrics.STATE_VERSION.set(version - firstStateVersion);
+        return new PublishedState(state, state.toBytes());
+    }
+
     /**
-     * This is the RMI method for the UI to get the latest state.
+     * This is the RMI method for the UI to get the latest state. It just
+     * returns the last published state; nothing is recomputed per call.
      */
     @Override
     public SystemState getState() throws RemoteException {
-        // I'm only sending the last 50 trades to keep the UI from lagging
-        // if the simulation runs for a long time.
-        List<Trade> recentTrades = tradeLog.stream()
-                .skip(Math.max(0, tradeLog.size() - MAX_TRADES_IN_STATE))
-                .collect(Collectors.toList());
-        return new SystemState(recentTrades, monitor.getStatuses(AGENT_TIMEOUT_MS), "UP");
+        return publishedState.state;
+    }
+
+    /**
+     * Cheaper version of getState for clients that poll a lot: the state comes
+     * already serialized (the same byte array for every caller), and if the
+     * caller already has the current version it gets null back.
+     */
+    @Override
+    public byte[] getStateIfNewer(long knownVersion) throws RemoteException {
+        PublishedState current = publishedState;
+        return current.state.getVersion() > knownVersion ? current.bytes : null;
+    }
+
+    // A published SystemState together with its serialized form.
+    private static class PublishedState {
+        private final SystemState state;
+        private final byte[] bytes;
+
+        private PublishedState(SystemState state, byte[] bytes) {
+            this.state = state;
+            this.bytes = bytes;
+        }
+    }
+
+    // A message waiting for the writer thread, with the future its RMI thread waits on.
+    private static class Inbound {
+        private final TradeMessage message;
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<ExecutionReport> result = new CompletableFuture<>();
+        // Set by whoever gets to the message first: the writer to process it, or
+        // the waiting RMI thread to give up on it.
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Inbound(TradeMessage message) {
+            this.message = message;
+        }
     }
 }
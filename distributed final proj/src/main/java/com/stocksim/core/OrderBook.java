@@ -0,0 +1,146 @@
+package com.stocksim.core;
+
+import com.stocksim.data.Order;
+import com.stocksim.data.OrderType;
+
+import java.util.Collections;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * A limit order book for one symbol with price-time priority. Each price level
+ * is a doubly linked list of resting orders, so once you have an order's
+ * {@link Entry} (the MarketNode keeps an index by order ID) you can cancel or
+ * shrink it in O(1) without searching the level. The only non-constant part is
+ * dropping a level from the TreeMap when its last order leaves.
+ *
+ * Not thread-safe; only the MarketNode's writer thread touches it.
+ */
+class OrderBook {
+
+    /** Called for every fill while matching, after the resting entry was updated. */
+    interface FillListener {
+        void onFill(Entry resting, int quantity, double price);
+    }
+
+    private final String symbol;
+    private final TreeMap<Double, PriceLevel> bids = new TreeMap<>(Collections.reverseOrder());
+    private final TreeMap<Double, PriceLevel> asks = new TreeMap<>();
+
+    OrderBook(String symbol) {
+        this.symbol = symbol;
+    }
+
+    String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Matches an incoming order against the other side of the book, best price
+     * first, trading at the resting order's price. Fully filled resting orders
+     * are removed from the book before the listener hears about them.
+     * @return The quantity of the incoming order that is still unfilled.
+     */
+    int match(Order incoming, int quantity, FillListener listener) {
+        boolean buying = incoming.getType() == OrderType.BUY;
+        TreeMap<Double, PriceLevel> opposite = buying ? asks : bids;
+        while (quantity > 0 && !opposite.isEmpty()) {
+            PriceLevel best = opposite.firstEntry().getValue();
+            boolean crosses = buying ? best.price <= incoming.getPrice() : best.price >= incoming.getPrice();
+            if (!crosses) break;
+
+            Entry resting = best.head;
+            int fillQuantity = Math.min(quantity, resting.remaining);
+            resting.remaining -= fillQuantity;
+            quantity -= fillQuantity;
+            if (resting.remaining == 0) {
+                remove(resting);
+            }
+            listener.onFill(resting, fillQuantity, best.price);
+        }
+        return quantity;
+    }
+
+    /** Puts the rest of an order at the back of its price level. */
+    Entry add(Order order, int quantity) {
+        TreeMap<Double, PriceLevel> side = order.getType() == OrderType.BUY ? bids : asks;
+        PriceLevel level = side.computeIfAbsent(order.getPrice(), PriceLevel::new);
+        Entry entry = new Entry(order, quantity, level);
+        level.append(entry);
+        return entry;
+    }
+
+    /** Takes a resting order out of the book. */
+    void remove(Entry entry) {
+        PriceLevel level = entry.level;
+        level.unlink(entry);
+        if (level.head == null) {
+            (entry.order.getType() == OrderType.BUY ? bids : asks).remove(level.price);
+        }
+    }
+
+    /** Shrinks a resting order in place. It keeps its place in the queue. */
+    void reduce(Entry entry, int newQuantity) {
+        entry.remaining = newQuantity;
+    }
+
+    /** Visits every resting order, bids then asks, in priority order. */
+    void forEachResting(Consumer<Entry> visitor) {
+        for (PriceLevel level : bids.values()) {
+            for (Entry entry = level.head; entry != null; entry = entry.next) visitor.accept(entry);
+        }
+        for (PriceLevel level : asks.values()) {
+            for (Entry entry = level.head; entry != null; entry = entry.next) visitor.accept(entry);
+        }
+    }
+
+    /** A resting order. The MarketNode's order-ID index points straight at these. */
+    static class Entry {
+        private final Order order;
+        private final PriceLevel level;
+        private int remaining;
+        // The causal trace event that put this order here, if tracing is on.
+        private String originEvent;
+        private Entry prev;
+        private Entry next;
+
+        private Entry(Order order, int remaining, PriceLevel level) {
+            this.order = order;
+            this.remaining = remaining;
+            this.level = level;
+        }
+
+        Order getOrder() { return order; }
+        int getRemaining() { return remaining; }
+        String getOriginEvent() { return originEvent; }
+        void setOriginEvent(String originEvent) { this.originEvent = originEvent; }
+    }
+
+    /** All resting orders at one price, oldest first. */
+    private static class PriceLevel {
+        private final double price;
+        private Entry head;
+        private Entry tail;
+
+        private PriceLevel(double price) {
+            this.price = price;
+        }
+
+        private void append(Entry entry) {
+            entry.prev = tail;
+            if (tail != null) {
+                tail.next = entry;
+            } else {
+                head = entry;
+            }
+            tail = entry;
+        }
+
+        private void unlink(Entry entry) {
+            if (entry.prev != null) entry.prev.next = entry.next; else head = entry.next;
+            if (entry.next != null) entry.next.prev = entry.prev; else tail = entry.prev;
+            entry.prev = null;
+            entry.next = null;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.stocksim.core;
+
+/**
+ * A token bucket rate limiter for one agent. Tokens refill continuously at a
+ * fixed rate up to a burst limit, and every order costs one token.
+ */
+class TokenBucket {
+
+    private final double tokensPerMs;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillMs;
+
+    TokenBucket(double tokensPerSecond, int burst) {
+        this.tokensPerMs = tokensPerSecond / 1000.0;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.lastRefillMs = System.currentTimeMillis();
+    }
+
+    /**
+     * Takes a token if there is one.
+     * @return 0 if a token was taken, otherwise how many ms until the next one is available.
+     */
+    synchronized long tryAcquire() {
+        long now = System.currentTimeMillis();
+        tokens = Math.min(capacity, tokens + (now - lastRefillMs) * tokensPerMs);
+        lastRefillMs = now;
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return 0;
+        }
+        return (long) Math.ceil((1.0 - tokens) / tokensPerMs);
+    }
+}
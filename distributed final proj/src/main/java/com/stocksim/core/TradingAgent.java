@@ -1,45 +1,76 @@
 package com.stocksim.core;
 
 import com.stocksim.data.*;
+import com.stocksim.metrics.CausalTrace;
 import com.stocksim.metrics.Metrics;
 import com.stocksim.net.MarketNodeRemote;
+import com.stocksim.strategy.OrderAction;
+import com.stocksim.strategy.TradingStrategy;
 
 import java.rmi.RemoteException;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is the code for a single trading agent. Each one runs in its own thread
- * and acts like an independent person trading on the market.
+ * and acts like an independent person trading on the market. What it actually
+ * trades is decided by its {@link TradingStrategy}.
  */
 public class TradingAgent implements Runnable {
 
-    private static final int BASE_METRICS_PORT = 9090;
+    private static final long HEARTBEAT_INTERVAL_MS = 3000;
+    private static final int MAX_SEND_ATTEMPTS = 3;
+    private static final int HEARTBEAT_THREADS = 2;
+
+    // Heartbeats don't go out from the agent's own thread: that one can be stuck
+    // in a slow submitMessage or backing off from a busy market for a while, and
+    // the market would take the silence for a crash. A heartbeat call returns as
+    // soon as the market queued it, so a couple of threads serve every agent in
+    // the process.
+    private static final ScheduledExecutorService HEARTBEATS = Executors.newScheduledThreadPool(HEARTBEAT_THREADS, task -> {
+        Thread thread = new Thread(task, "agent-heartbeats");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private final String agentId;
     private final MarketNodeRemote market;
     private final LamportClock clock;
+    private final TradingStrategy strategy;
+    private final BlockingQueue<Trade> marketData;
     private final Random random = new Random();
-    private final String[] stockSymbols = {"AAPL", "GOOG", "TSLA"};
     private final boolean simulateFailure;
-    private int messageCount = 0;
+    // Causality tracking; both null unless it's switched on. The trace file is
+    // shared by all the agents in the process.
+    private final VectorClock vectorClock;
+    private final CausalTrace trace;
+    private final AtomicInteger messageCount = new AtomicInteger();
 
-    public TradingAgent(String agentId, MarketNodeRemote market, boolean simulateFailure) {
+    /**
+     * @param trace Where to log causal trace records, or null to leave
+     *              causality tracking (and the vector clock) off.
+     */
+    public TradingAgent(String agentId, MarketNodeRemote market, TradingStrategy strategy,
+                        BlockingQueue<Trade> marketData, boolean simulateFailure, CausalTrace trace) {
         this.agentId = agentId;
         this.market = market;
         this.clock = new LamportClock();
+        this.vectorClock = trace == null ? null : new VectorClock(agentId);
+        this.trace = trace;
+        this.strategy = strategy;
+        this.marketData = marketData;
         this.simulateFailure = simulateFailure;
 
-        // This is a simple way to give each agent its own metrics port.
-        // It just parses the number from the agentId (e.g., "agent-1" -> 1).
-        try {
-            int agentNumericId = Integer.parseInt(agentId.substring(agentId.lastIndexOf("-") + 1));
-            int metricsPort = BASE_METRICS_PORT + agentNumericId;
-            Metrics.startMetricsServer(metricsPort);
-            Metrics.NODE_STATUS.labels(this.agentId).set(1); // 1 for UP
-            tick();
-        } catch (NumberFormatException e) {
-            System.err.println("Could not parse agent ID for metrics port: " + agentId);
-        }
+        // The metrics endpoint is shared by the whole process (the launcher
+        // starts it); my series are told apart by my agent ID label.
+        Metrics.NODE_STATUS.labels(this.agentId).set(1); // 1 for UP
+        tick();
     }
 
     // My own clock tick. I call this before I send any message.
@@ -51,30 +82,40 @@ public class TradingAgent implements Runnable {
 
     /**
      * This is the main loop for the agent. It's basically the agent's entire life.
-     * It just sleeps for a bit, then decides to either trade or send a heartbeat.
+     * It waits for market data and hands it to the strategy, sends whatever orders
+     * the strategy comes up with, while heartbeats go out on a fixed interval in
+     * the background. The strategy also gets an idle callback every couple of
+     * seconds, busy market or not.
      */
     @Override
     public void run() {
+        System.out.printf("Agent %s running %s strategy on %d symbol(s).%n",
+                agentId, strategy.getName(), strategy.getSymbols().size());
+        ScheduledFuture<?> heartbeats = HEARTBEATS.scheduleAtFixedRate(this::heartbeat, 0, HEARTBEAT_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
         try {
+            long nextIdle = System.currentTimeMillis() + idleDelay();
             while (!Thread.currentThread().isInterrupted()) {
-                Thread.sleep(1000 + random.nextInt(2000));
-
                 // I added this flag mainly for the demo, to prove the failure
                 // detector on the MarketNode actually works.
-                if (simulateFailure && messageCount > (5 + random.nextInt(5))) {
+                if (simulateFailure && messageCount.get() > (5 + random.nextInt(5))) {
                     System.out.printf("!!! Agent %s is now SIMULATING FAILURE - stopping all messages. !!!%n", agentId);
                     Metrics.NODE_STATUS.labels(this.agentId).set(0);
                     break; // Stop sending messages.
                 }
 
-                // I made it more likely to send an order than a heartbeat to keep things interesting.
-                boolean sendOrder = random.nextDouble() > 0.3;
-                if (sendOrder) {
-                    sendOrderMessage();
-                } else {
-                    sendHeartbeatMessage();
+                long now = System.currentTimeMillis();
+                if (now >= nextIdle) {
+                    sendOrders(strategy.onIdle());
+                    nextIdle = now + idleDelay();
+                }
+
+                Trade trade = marketData.poll(nextIdle - now, TimeUnit.MILLISECONDS);
+                while (trade != null) {
+                    receiveTrade(trade);
+                    sendOrders(strategy.onTrade(trade));
+                    trade = marketData.poll();
                 }
-                messageCount++;
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -82,30 +123,84 @@ public class TradingAgent implements Runnable {
             // If I can't talk to the market, I should probably just shut down.
             System.err.printf("Agent %s lost connection to MarketNode: %s%n", agentId, e.getMessage());
             Metrics.NODE_STATUS.labels(this.agentId).set(0);
+        } finally {
+            // Whether I failed for real or just for the demo, the heartbeats stop with me.
+            heartbeats.cancel(false);
+        }
+    }
+
+    // A trade in the market data is a message from the market too, so it moves
+    // my clock forward before the strategy reacts to it. Otherwise an order sent
+    // in reaction could carry a smaller timestamp than the trade that caused it.
+    private void receiveTrade(Trade trade) {
+        clock.updateOnReceive(trade.getLamportTimestamp());
+        Metrics.LAMPORT_CLOCK.labels(this.agentId).set(clock.getTime());
+        receiveCausally(trade);
+    }
+
+    private long idleDelay() {
+        return 1000 + random.nextInt(2000);
+    }
+
+    private void sendOrders(List<OrderAction> actions) throws RemoteException, InterruptedException {
+        for (OrderAction action : actions) {
+            sendOrderMessage(action);
+            messageCount.incrementAndGet();
+        }
+    }
+
+    // Sends one order, cancel or replace the strategy decided on, and hands
+    // the market's execution report back to the strategy. If the market says
+    // it's overloaded I back off for as long as it asks and try again.
+    private void sendOrderMessage(OrderAction action) throws RemoteException, InterruptedException {
+        for (int attempt = 1; attempt <= MAX_SEND_ATTEMPTS; attempt++) {
+            ExecutionReport report = sendOnce(action);
+            if (report == null || report.getStatus() != ExecutionStatus.THROTTLED) {
+                return;
+            }
+            Metrics.THROTTLED_TOTAL.labels(this.agentId).inc();
+            System.out.printf("Agent %s: Market is busy (%s), backing off %d ms (attempt %d/%d)%n",
+                    agentId, report.getReason(), report.getRetryAfterMs(), attempt, MAX_SEND_ATTEMPTS);
+            Thread.sleep(report.getRetryAfterMs());
         }
+        System.out.printf("Agent %s: Giving up on %s %s after %d attempts%n",
+                agentId, action.getType(), action.getOrder().getOrderId(), MAX_SEND_ATTEMPTS);
     }
 
-    // Creates and sends a random trade order.
-    private void sendOrderMessage() throws RemoteException {
-        // The "trading strategy" is just to pick everything randomly. The goal here
-        // wasn't to make a smart agent, but to generate traffic for the system.
-        OrderType type = random.nextBoolean() ? OrderType.BUY : OrderType.SELL;
-        String symbol = stockSymbols[random.nextInt(stockSymbols.length)];
-        int quantity = 1 + random.nextInt(100);
-        double price = 10.0 + (190.0 * random.nextDouble());
-        Order order = new Order(agentId, symbol, quantity, price, type);
-
-        System.out.printf("Agent %s: Local clock before sending ORDER: %d%n", agentId, clock.getTime());
+    private ExecutionReport sendOnce(OrderAction action) throws RemoteException {
+        MessageType type = action.getType();
+        Order order = action.getOrder();
+        System.out.printf("Agent %s: Local clock before sending %s: %d%n", agentId, type, clock.getTime());
         long timestamp = tick(); // Important: get the timestamp *before* sending.
-        System.out.printf("Agent %s: Local clock after tick (ORDER): %d. Sending timestamp: %d%n", agentId, clock.getTime(), timestamp);
+        System.out.printf("Agent %s: Local clock after tick (%s): %d. Sending timestamp: %d%n", agentId, type, clock.getTime(), timestamp);
 
-        TradeMessage message = new TradeMessage(agentId, MarketNode.RMI_NAME, MessageType.ORDER, order, timestamp);
-        market.submitMessage(message);
+        TradeMessage message = newMessage(type, order, timestamp);
+        ExecutionReport report = market.submitMessage(message);
 
         Metrics.MESSAGES_SENT_TOTAL.labels(this.agentId).inc();
 
-        System.out.printf("[LT=%d] Agent %s -> Market: Sent ORDER %s %d %s @ %.2f%n",
-                timestamp, agentId, type, quantity, symbol, price);
+        System.out.printf("[LT=%d] Agent %s -> Market: Sent %s %s %s %d %s @ %.2f%n",
+                timestamp, agentId, type, order.getOrderId(), order.getType(), order.getQuantity(), order.getStockSymbol(), order.getPrice());
+
+        if (report != null) {
+            // The report is a message from the market too, so it moves my clock forward.
+            clock.updateOnReceive(report.getLamportTimestamp());
+            Metrics.LAMPORT_CLOCK.labels(this.agentId).set(clock.getTime());
+            receiveCausally(report);
+            strategy.onExecution(report);
+            System.out.printf("[LT=%d] Agent %s <- Market: %s%n", clock.getTime(), agentId, report);
+        }
+        return report;
+    }
+
+    // Runs on the heartbeat scheduler. An exception would cancel the schedule,
+    // so a failed heartbeat is only logged; the next one tries again.
+    private void heartbeat() {
+        try {
+            sendHeartbeatMessage();
+        } catch (RemoteException | RuntimeException e) {
+            System.err.printf("Agent %s could not send a heartbeat: %s%n", agentId, e.getMessage());
+        }
     }
 
     // Sends a heartbeat to let the MarketNode know I'm still alive.
@@ -114,12 +209,45 @@ public class TradingAgent implements Runnable {
         long timestamp = tick(); // Timestamp the heartbeat too.
         System.out.printf("Agent %s: Local clock after tick (HEARTBEAT): %d. Sending timestamp: %d%n", agentId, clock.getTime(), timestamp);
 
-        TradeMessage message = new TradeMessage(agentId, MarketNode.RMI_NAME, MessageType.HEARTBEAT, null, timestamp);
+        TradeMessage message = newMessage(MessageType.HEARTBEAT, null, timestamp);
         market.submitMessage(message);
 
         Metrics.HEARTBEATS_TOTAL.labels(this.agentId).inc();
         Metrics.MESSAGES_SENT_TOTAL.labels(this.agentId).inc();
+        messageCount.incrementAndGet();
 
         System.out.printf("[LT=%d] Agent %s -> Market: Sent HEARTBEAT%n", timestamp, agentId);
     }
+
+    // A message to the market. With causality tracking on, sending it is an event
+    // on my vector clock, and it carries the entries and send time for the trace.
+    private TradeMessage newMessage(MessageType type, Order order, long timestamp) {
+        if (vectorClock == null) {
+            return new TradeMessage(agentId, MarketNode.RMI_NAME, type, order, timestamp);
+        }
+        return new TradeMessage(agentId, MarketNode.RMI_NAME, type, order, timestamp,
+                vectorClock.updateOnSend(MarketNode.RMI_NAME), CausalTrace.currentTimeMicros());
+    }
+
+    // A reply from the market is a receive event; the trace gets the edge from
+    // the market event that produced it.
+    private void receiveCausally(ExecutionReport report) {
+        VectorTimestamp received = report.getVectorTimestamp();
+        if (vectorClock == null || received == null) return; // THROTTLED replies carry none
+        // My heartbeats tick the same clock from another thread, hence the returned time.
+        long time = vectorClock.updateOnReceive(MarketNode.RMI_NAME, received);
+        trace.receive(CausalTrace.eventId(report.getSenderId(), received.get(report.getSenderId())),
+                CausalTrace.eventId(agentId, time), "REPORT", report.getOrderId(), null,
+                report.getSentAtMicros());
+    }
+
+    // Seeing a trade in the market data is a receive event too. The trace names
+    // the trade rather than the market event; the MarketNode's trace maps one to the other.
+    private void receiveCausally(Trade trade) {
+        VectorTimestamp received = trade.getVectorTimestamp();
+        if (vectorClock == null || received == null) return;
+        long time = vectorClock.updateOnReceive(MarketNode.RMI_NAME, received);
+        trace.receive(null, CausalTrace.eventId(agentId, time), "TRADE", null, trade.getTradeId(),
+                trade.getSystemTimeMillis() * 1000);
+    }
 }
@@ -0,0 +1,159 @@
+package com.stocksim.core;
+
+import com.stocksim.data.VectorTimestamp;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A vector clock for one node. Unlike the {@link LamportClock} it can tell two
+ * causally concurrent events apart from ordered ones.
+ *
+ * To keep messages small with thousands of agents, a node doesn't send its
+ * whole vector. It remembers, per peer, its own time when it last sent to that
+ * peer, and only sends the entries that changed since then (the
+ * Singhal-Kshemkalyani technique). Entries it learned from a peer are never
+ * sent back to that peer, since the peer already knows at least that much.
+ * This relies on each link delivering messages in order. An agent's heartbeats
+ * can overtake its orders, but an agent only learns entries from the market and
+ * never sends those back, so its messages carry nothing but its own entry, and
+ * for that the order doesn't matter.
+ */
+public class VectorClock {
+
+    private final String nodeId;
+    // Kept sorted by node ID, so building a VectorTimestamp is a plain copy.
+    private final TreeMap<String, Long> counters = new TreeMap<>();
+    // For each entry: my own time when it last changed, and who told me about it.
+    private final Map<String, Long> changedAt = new HashMap<>();
+    private final Map<String, String> learnedFrom = new HashMap<>();
+    // The same information indexed by time, so finding what changed since a
+    // given time doesn't need a pass over every entry.
+    private final TreeMap<Long, Set<String>> changesByTime = new TreeMap<>();
+    private final Map<String, Long> lastSentTo = new HashMap<>();
+    private long time;
+    // The complete vector as of the last change, handed out until the next one.
+    private VectorTimestamp snapshot;
+
+    public VectorClock(String nodeId) {
+        this(nodeId, VectorTimestamp.EMPTY);
+    }
+
+    /**
+     * Creates a clock that resumes from a saved vector, e.g. after loading a
+     * snapshot. Every peer gets the full vector the next time I send to it.
+     *
+     * My own entry never starts below the start time (in milliseconds, shifted
+     * into the high bits), so a node that restarts without its saved vector,
+     * or an agent that comes back under the same ID, doesn't number its events
+     * from 1 again and reuse event IDs from the previous run.
+     */
+    public VectorClock(String nodeId, VectorTimestamp saved) {
+        this.nodeId = nodeId;
+        this.time = Math.max(saved.get(nodeId), System.currentTimeMillis() << 20);
+        set(nodeId, time, null);
+        for (int i = 0; i < saved.size(); i++) {
+            if (!saved.getNodeId(i).equals(nodeId)) set(saved.getNodeId(i), saved.getCounter(i), null);
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * A send event: ticks my own entry and returns what the peer hasn't
+     * heard from me yet.
+     */
+    public synchronized VectorTimestamp updateOnSend(String peer) {
+        time++;
+        set(nodeId, time, null);
+        return changesFor(peer);
+    }
+
+    /**
+     * Returns what the peer hasn't heard from me yet, without a new event. The
+     * MarketNode uses this for its reply, which belongs to the same event as
+     * receiving the request.
+     */
+    public synchronized VectorTimestamp changesFor(String peer) {
+        Long sentAt = lastSentTo.put(peer, time);
+        Map<String, Long> changed = new HashMap<>();
+        for (Set<String> ids : changesByTime.tailMap(sentAt == null ? -1L : sentAt, false).values()) {
+            for (String id : ids) {
+                if (!peer.equals(learnedFrom.get(id))) changed.put(id, counters.get(id));
+            }
+        }
+        return VectorTimestamp.of(changed);
+    }
+
+    /**
+     * A receive event: takes the entry-wise maximum with what the sender sent
+     * and ticks my own entry.
+     * @return My own entry for this event. Read it from here rather than from
+     *         getTime(), which another thread's send could already have moved on.
+     */
+    public synchronized long updateOnReceive(String sender, VectorTimestamp received) {
+        time++;
+        set(nodeId, time, null);
+        for (int i = 0; i < received.size(); i++) {
+            String id = received.getNodeId(i);
+            if (!id.equals(nodeId) && received.getCounter(i) > counters.getOrDefault(id, 0L)) {
+                set(id, received.getCounter(i), sender);
+            }
+        }
+        return time;
+    }
+
+    /**
+     * A sparse stamp for my current event: my own entry plus what I know of the
+     * given nodes, nothing else. The MarketNode stamps trades this way with
+     * their direct dependencies, so a trade costs the same with 10 agents as
+     * with 10,000.
+     */
+    public synchronized VectorTimestamp stamp(String... nodeIds) {
+        Map<String, Long> entries = new TreeMap<>();
+        entries.put(nodeId, time);
+        for (String id : nodeIds) {
+            entries.put(id, counters.getOrDefault(id, 0L));
+        }
+        return VectorTimestamp.of(entries);
+    }
+
+    /**
+     * My complete current vector. This costs O(entries) whenever the vector
+     * changed since the last call; otherwise the same instance is returned.
+     */
+    public synchronized VectorTimestamp snapshot() {
+        if (snapshot == null) {
+            snapshot = VectorTimestamp.of(counters);
+        }
+        return snapshot;
+    }
+
+    /** My own entry, which numbers my events one after the other. */
+    public synchronized long getTime() {
+        return time;
+    }
+
+    private void set(String id, long value, String source) {
+        counters.put(id, value);
+        snapshot = null;
+        if (source != null) learnedFrom.put(id, source); else learnedFrom.remove(id);
+        Long previous = changedAt.put(id, time);
+        if (previous != null) {
+            Set<String> ids = changesByTime.get(previous);
+            ids.remove(id);
+            if (ids.isEmpty()) changesByTime.remove(previous);
+        }
+        changesByTime.computeIfAbsent(time, t -> new HashSet<>()).add(id);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "VectorClock{" + nodeId + ", " + snapshot() + '}';
+    }
+}
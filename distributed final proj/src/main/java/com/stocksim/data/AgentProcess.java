@@ -0,0 +1,29 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes one agent process (one JVM, possibly running many agents) and
+ * where its shared /metrics endpoint can be scraped.
+ */
+public class AgentProcess implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String processId;
+    private final String host;
+    private final int metricsPort;
+    private final List<String> agentIds;
+
+    public AgentProcess(String processId, String host, int metricsPort, List<String> agentIds) {
+        this.processId = processId;
+        this.host = host;
+        this.metricsPort = metricsPort;
+        this.agentIds = Collections.unmodifiableList(agentIds);
+    }
+
+    public String getProcessId() { return processId; }
+    public String getHost() { return host; }
+    public int getMetricsPort() { return metricsPort; }
+    public List<String> getAgentIds() { return agentIds; }
+}
@@ -0,0 +1,84 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The MarketNode's answer to an ORDER, CANCEL or REPLACE message. It tells the
+ * agent what happened to the order and lists the fills this request caused.
+ * Fills that happen later, while the order is resting, show up in the market
+ * data as trades with the order as the counterparty.
+ */
+public class ExecutionReport implements Serializable {
+    private static final long serialVersionUID = 2L;
+    private final String orderId;
+    private final ExecutionStatus status;
+    private final int filledQuantity;
+    private final int remainingQuantity;
+    private final List<Trade> fills;
+    private final String reason;
+    private final long lamportTimestamp;
+    private final long retryAfterMs;
+    // Causality tracking (see withVectorTimestamp); null/0 when it's off.
+    private final String senderId;
+    private final VectorTimestamp vectorTimestamp;
+    private final long sentAtMicros;
+
+    public ExecutionReport(String orderId, ExecutionStatus status, int filledQuantity, int remainingQuantity,
+                           List<Trade> fills, String reason, long lamportTimestamp) {
+        this(orderId, status, filledQuantity, remainingQuantity, fills, reason, lamportTimestamp, 0);
+    }
+
+    public ExecutionReport(String orderId, ExecutionStatus status, int filledQuantity, int remainingQuantity,
+                           List<Trade> fills, String reason, long lamportTimestamp, long retryAfterMs) {
+        this(orderId, status, filledQuantity, remainingQuantity, fills, reason, lamportTimestamp, retryAfterMs, null, null, 0);
+    }
+
+    private ExecutionReport(String orderId, ExecutionStatus status, int filledQuantity, int remainingQuantity,
+                            List<Trade> fills, String reason, long lamportTimestamp, long retryAfterMs,
+                            String senderId, VectorTimestamp vectorTimestamp, long sentAtMicros) {
+        this.orderId = orderId;
+        this.status = status;
+        this.filledQuantity = filledQuantity;
+        this.remainingQuantity = remainingQuantity;
+        this.fills = Collections.unmodifiableList(fills);
+        this.reason = reason;
+        this.lamportTimestamp = lamportTimestamp;
+        this.retryAfterMs = retryAfterMs;
+        this.senderId = senderId;
+        this.vectorTimestamp = vectorTimestamp;
+        this.sentAtMicros = sentAtMicros;
+    }
+
+    /**
+     * A copy of this report stamped with the sender's vector clock entries the
+     * agent hasn't seen yet, and the time (in microseconds) it's sent at. Done
+     * right before the report goes out, so the send time is accurate.
+     */
+    public ExecutionReport withVectorTimestamp(String senderId, VectorTimestamp vectorTimestamp, long sentAtMicros) {
+        return new ExecutionReport(orderId, status, filledQuantity, remainingQuantity, fills, reason, lamportTimestamp,
+                retryAfterMs, senderId, vectorTimestamp, sentAtMicros);
+    }
+
+    public String getOrderId() { return orderId; }
+    public ExecutionStatus getStatus() { return status; }
+    public int getFilledQuantity() { return filledQuantity; }
+    public int getRemainingQuantity() { return remainingQuantity; }
+    public List<Trade> getFills() { return fills; }
+    public String getReason() { return reason; }
+    public long getLamportTimestamp() { return lamportTimestamp; }
+    /** For THROTTLED reports: how long the agent should back off before resending. */
+    public long getRetryAfterMs() { return retryAfterMs; }
+    public String getSenderId() { return senderId; }
+    public VectorTimestamp getVectorTimestamp() { return vectorTimestamp; }
+    public long getSentAtMicros() { return sentAtMicros; }
+
+    @Override
+    public String toString() {
+        return "ExecutionReport{" + "orderId='" + orderId + "'" + ", status=" + status
+                + ", filled=" + filledQuantity + ", remaining=" + remainingQuantity
+                + (reason != null ? ", reason='" + reason + "'" : "")
+                + (retryAfterMs > 0 ? ", retryAfterMs=" + retryAfterMs : "") + '}';
+    }
+}
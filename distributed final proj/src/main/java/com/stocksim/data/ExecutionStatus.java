@@ -0,0 +1,13 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+
+public enum ExecutionStatus implements Serializable {
+    NEW,              // accepted and resting in the book, nothing filled yet
+    PARTIALLY_FILLED, // some of it traded, the rest is resting
+    FILLED,           // nothing left
+    REPLACED,         // a replace was applied, the order is still resting
+    CANCELED,
+    REJECTED,         // the request itself was invalid
+    THROTTLED         // not processed because the market is overloaded; retry after the given delay
+}
@@ -3,6 +3,8 @@ package com.stocksim.data;
 import java.io.Serializable;
 
 public enum MessageType implements Serializable {
-    ORDER,
+    ORDER,    // a new order
+    CANCEL,   // cancel a resting order by its order ID
+    REPLACE,  // change the price/quantity of a resting order by its order ID
     HEARTBEAT
 }
@@ -3,14 +3,16 @@ package com.stocksim.data;
 import java.io.Serializable;
 
 public class Order implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+    private final String orderId;
     private final String agentId;
     private final String stockSymbol;
     private final int quantity;
     private final double price;
     private final OrderType type;
 
-    public Order(String agentId, String stockSymbol, int quantity, double price, OrderType type) {
+    public Order(String orderId, String agentId, String stockSymbol, int quantity, double price, OrderType type) {
+        this.orderId = orderId;
         this.agentId = agentId;
         this.stockSymbol = stockSymbol;
         this.quantity = quantity;
@@ -18,14 +20,23 @@ public class Order implements Serializable {
         this.type = type;
     }
 
+    public String getOrderId() { return orderId; }
     public String getAgentId() { return agentId; }
     public String getStockSymbol() { return stockSymbol; }
     public int getQuantity() { return quantity; }
     public double getPrice() { return price; }
     public OrderType getType() { return type; }
 
+    /**
+     * Makes a copy with a new price and quantity but the same order ID. This is
+     * what gets sent in a REPLACE message.
+     */
+    public Order withQuantityAndPrice(int quantity, double price) {
+        return new Order(orderId, agentId, stockSymbol, quantity, price, type);
+    }
+
     @Override
     public String toString() {
-        return "Order{" + "agentId='" + agentId + "'" + ", type=" + type + '}' ;
+        return "Order{" + "orderId='" + orderId + "'" + ", agentId='" + agentId + "'" + ", type=" + type + '}' ;
     }
 }
@@ -1,23 +1,53 @@
 package com.stocksim.data;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * What the UI shows. The MarketNode publishes a new one (with a higher version)
+ * only when something changed, and it never changes after it's built.
+ */
 public class SystemState implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+    private final long version;
     private final List<Trade> recentTrades;
     private final Map<String, String> agentStatuses;
     private final String marketNodeStatus;
 
-    public SystemState(List<Trade> recentTrades, Map<String, String> agentStatuses, String marketNodeStatus) {
+    public SystemState(long version, List<Trade> recentTrades, Map<String, String> agentStatuses, String marketNodeStatus) {
+        this.version = version;
         this.recentTrades = Collections.unmodifiableList(recentTrades);
         this.agentStatuses = Collections.unmodifiableMap(agentStatuses);
         this.marketNodeStatus = marketNodeStatus;
     }
 
+    public long getVersion() { return version; }
     public List<Trade> getRecentTrades() { return recentTrades; }
     public Map<String, String> getAgentStatuses() { return agentStatuses; }
     public String getMarketNodeStatus() { return marketNodeStatus; }
+
+    /** Java-serializes this state once so the bytes can be handed to many clients. */
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(this);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** The other half of {@link #toBytes()}, used on the client side. */
+    public static SystemState fromBytes(byte[] data) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (SystemState) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Could not read SystemState", e);
+        }
+    }
 }
@@ -2,31 +2,63 @@ package com.stocksim.data;
 
 import java.io.Serializable;
 
+/**
+ * One fill between an incoming (aggressor) order and a resting (passive) order.
+ * The agent/order of the aggressor is the "agent"/"order", the resting side is
+ * the "counterparty".
+ */
 public class Trade implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 3L;
     private final String tradeId;
     private final String agentId;
+    private final String counterpartyId;
+    private final String orderId;
+    private final String counterpartyOrderId;
+    private final OrderType side;
     private final String stockSymbol;
     private final int quantity;
     private final double price;
     private final long lamportTimestamp;
     private final long systemTimeMillis;
+    // The trade's direct dependencies, or null if causality tracking is off: the
+    // MarketNode's entry for the event the trade happened in and its entries for
+    // the two agents. Not a complete vector, which would make every trade cost
+    // O(agents); the causal trace has what's needed to rebuild that offline.
+    private final VectorTimestamp vectorTimestamp;
 
-    public Trade(String tradeId, String agentId, String stockSymbol, int quantity, double price, long lamportTimestamp, long systemTimeMillis) {
+    public Trade(String tradeId, String agentId, String counterpartyId, String orderId, String counterpartyOrderId,
+                 OrderType side, String stockSymbol, int quantity, double price, long lamportTimestamp, long systemTimeMillis) {
+        this(tradeId, agentId, counterpartyId, orderId, counterpartyOrderId, side, stockSymbol, quantity, price,
+                lamportTimestamp, systemTimeMillis, null);
+    }
+
+    public Trade(String tradeId, String agentId, String counterpartyId, String orderId, String counterpartyOrderId,
+                 OrderType side, String stockSymbol, int quantity, double price, long lamportTimestamp, long systemTimeMillis,
+                 VectorTimestamp vectorTimestamp) {
         this.tradeId = tradeId;
         this.agentId = agentId;
+        this.counterpartyId = counterpartyId;
+        this.orderId = orderId;
+        this.counterpartyOrderId = counterpartyOrderId;
+        this.side = side;
         this.stockSymbol = stockSymbol;
         this.quantity = quantity;
         this.price = price;
         this.lamportTimestamp = lamportTimestamp;
         this.systemTimeMillis = systemTimeMillis;
+        this.vectorTimestamp = vectorTimestamp;
     }
 
     public String getTradeId() { return tradeId; }
     public String getAgentId() { return agentId; }
+    public String getCounterpartyId() { return counterpartyId; }
+    public String getOrderId() { return orderId; }
+    public String getCounterpartyOrderId() { return counterpartyOrderId; }
+    public OrderType getSide() { return side; }
     public String getStockSymbol() { return stockSymbol; }
     public int getQuantity() { return quantity; }
     public double getPrice() { return price; }
     public long getLamportTimestamp() { return lamportTimestamp; }
     public long getSystemTimeMillis() { return systemTimeMillis; }
+    public VectorTimestamp getVectorTimestamp() { return vectorTimestamp; }
 }
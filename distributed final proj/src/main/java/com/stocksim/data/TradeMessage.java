@@ -3,19 +3,32 @@ package com.stocksim.data;
 import java.io.Serializable;
 
 public class TradeMessage implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     private final String senderId;
     private final String receiverId;
     private final MessageType type;
     private final Order order;
     private final long lamportTimestamp;
+    // Only set when causality tracking is on: the sender's vector clock entries
+    // the receiver hasn't seen yet. null otherwise.
+    private final VectorTimestamp vectorTimestamp;
+    // Wall clock time (in microseconds) when the message was sent, for the
+    // per-hop latency in the causal trace. 0 without a vector timestamp.
+    private final long sentAtMicros;
 
     public TradeMessage(String senderId, String receiverId, MessageType type, Order order, long lamportTimestamp) {
+        this(senderId, receiverId, type, order, lamportTimestamp, null, 0);
+    }
+
+    public TradeMessage(String senderId, String receiverId, MessageType type, Order order, long lamportTimestamp,
+                        VectorTimestamp vectorTimestamp, long sentAtMicros) {
         this.senderId = senderId;
         this.receiverId = receiverId;
         this.type = type;
         this.order = order;
         this.lamportTimestamp = lamportTimestamp;
+        this.vectorTimestamp = vectorTimestamp;
+        this.sentAtMicros = sentAtMicros;
     }
 
     public String getSenderId() { return senderId; }
@@ -23,4 +36,6 @@ public class TradeMessage implements Serializable {
     public MessageType getType() { return type; }
     public Order getOrder() { return order; }
     public long getLamportTimestamp() { return lamportTimestamp; }
+    public VectorTimestamp getVectorTimestamp() { return vectorTimestamp; }
+    public long getSentAtMicros() { return sentAtMicros; }
 }
@@ -0,0 +1,113 @@
+package com.stocksim.data;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable, sparse vector clock value: only the nodes with a non-zero
+ * counter are stored (as two parallel arrays sorted by node ID), so a message
+ * only pays for the nodes it actually knows about, not for every node in the
+ * simulation.
+ *
+ * Messages between two nodes usually carry just the entries that changed since
+ * the last message on that link (see VectorClock), and trades carry only their
+ * direct dependencies (see Trade), so a received value is not always a
+ * complete vector.
+ */
+public final class VectorTimestamp implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final VectorTimestamp EMPTY = new VectorTimestamp(new String[0], new long[0]);
+
+    private final String[] nodeIds;
+    private final long[] counters;
+
+    private VectorTimestamp(String[] nodeIds, long[] counters) {
+        this.nodeIds = nodeIds;
+        this.counters = counters;
+    }
+
+    /**
+     * Builds a value from node ID -> counter. Zero counters are left out. A map
+     * already sorted by node ID (like VectorClock's) is copied in one pass;
+     * anything else gets sorted first.
+     */
+    public static VectorTimestamp of(Map<String, Long> entries) {
+        boolean sorted = entries instanceof SortedMap && ((SortedMap<String, Long>) entries).comparator() == null;
+        Map<String, Long> source = sorted ? entries : new TreeMap<>(entries);
+        String[] ids = new String[source.size()];
+        long[] values = new long[source.size()];
+        int size = 0;
+        for (Map.Entry<String, Long> entry : source.entrySet()) {
+            if (entry.getValue() > 0) {
+                ids[size] = entry.getKey();
+                values[size++] = entry.getValue();
+            }
+        }
+        if (size == 0) return EMPTY;
+        return new VectorTimestamp(Arrays.copyOf(ids, size), Arrays.copyOf(values, size));
+    }
+
+    public int size() { return nodeIds.length; }
+    public String getNodeId(int index) { return nodeIds[index]; }
+    public long getCounter(int index) { return counters[index]; }
+
+    /** The counter for a node, 0 if this value has no entry for it. */
+    public long get(String nodeId) {
+        int index = Arrays.binarySearch(nodeIds, nodeId);
+        return index >= 0 ? counters[index] : 0;
+    }
+
+    /**
+     * True if the event stamped with this value happened before the one stamped
+     * with other: no entry is bigger here, and at least one is smaller.
+     * Both values must be complete vectors.
+     */
+    public boolean happenedBefore(VectorTimestamp other) {
+        boolean smaller = false;
+        int i = 0;
+        int j = 0;
+        // Both arrays are sorted, so one merge-style walk compares every node.
+        while (i < nodeIds.length || j < other.nodeIds.length) {
+            int order = i == nodeIds.length ? 1 : j == other.nodeIds.length ? -1 : nodeIds[i].compareTo(other.nodeIds[j]);
+            long mine = order <= 0 ? counters[i] : 0;
+            long theirs = order >= 0 ? other.counters[j] : 0;
+            if (mine > theirs) return false;
+            if (mine < theirs) smaller = true;
+            if (order <= 0) i++;
+            if (order >= 0) j++;
+        }
+        return smaller;
+    }
+
+    /** True if neither event could have influenced the other. */
+    public boolean isConcurrentWith(VectorTimestamp other) {
+        return !happenedBefore(other) && !other.happenedBefore(this) && !equals(other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof VectorTimestamp)) return false;
+        VectorTimestamp that = (VectorTimestamp) o;
+        return Arrays.equals(nodeIds, that.nodeIds) && Arrays.equals(counters, that.counters);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(nodeIds) + Arrays.hashCode(counters);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < nodeIds.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(nodeIds[i]).append('=').append(counters[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
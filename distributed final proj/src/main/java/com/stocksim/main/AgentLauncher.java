@@ -1,12 +1,27 @@
 package com.stocksim.main;
 
+import com.stocksim.config.SimulationConfig;
 import com.stocksim.core.MarketNode;
 import com.stocksim.core.TradingAgent;
+import com.stocksim.data.AgentProcess;
+import com.stocksim.metrics.CausalTrace;
+import com.stocksim.metrics.Metrics;
+import com.stocksim.net.MarketDataFeed;
 import com.stocksim.net.MarketNodeRemote;
+import com.stocksim.strategy.StrategyFactory;
+import com.stocksim.strategy.TradingStrategy;
+import com.sun.net.httpserver.HttpServer;
 
+import java.net.InetAddress;
+import java.nio.file.Paths;
 import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class AgentLauncher {
+    private static final int MARKET_DATA_BUFFER = 1000;
+
     public static void main(String[] args) {
         if (args.length != 1) {
             System.err.println("Usage: java com.stocksim.main.AgentLauncher <numberOfAgents>");
@@ -18,19 +33,68 @@ public class AgentLauncher {
             MarketNodeRemote market = (MarketNodeRemote) Naming.lookup(rmiUrl);
             System.out.println("Successfully connected to MarketNode at " + rmiUrl);
 
+            SimulationConfig config = SimulationConfig.load();
+            StrategyFactory strategies = new StrategyFactory(config);
+            MarketDataFeed feed = new MarketDataFeed();
+            market.subscribe(feed);
+
+            // One metrics endpoint for the whole process, no matter how many agents.
+            // Port 0 (the default) lets the OS pick; the MarketNode tells Prometheus where it is.
+            HttpServer metricsServer = Metrics.startMetricsServer(config.getInt("sim.agent.metricsPort", 0));
+            String processId = InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+            // All agents in this process share one causal trace file.
+            CausalTrace trace = config.getBoolean("sim.causality.enabled", false)
+                    ? new CausalTrace(Paths.get(config.getString("sim.causality.traceDir", "traces")), processId)
+                    : null;
+            if (trace != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(trace::close, "causal-trace-close"));
+            }
+
+            // When running several launchers, give each its own ID range (e.g. 1, 101, 201).
+            int firstAgentNumber = config.getInt("sim.agent.firstId", 1);
+            List<String> agentIds = new ArrayList<>();
             for (int i = 0; i < numberOfAgents; i++) {
-                String agentId = "agent-" + (i + 1);
+                String agentId = "agent-" + (firstAgentNumber + i);
+                agentIds.add(agentId);
                 boolean willFail = (i == 0); // First agent will simulate failure
-                TradingAgent agent = new TradingAgent(agentId, market, willFail);
+                TradingStrategy strategy = strategies.create(i, agentId);
+                TradingAgent agent = new TradingAgent(agentId, market, strategy,
+                        feed.register(strategy.getSymbols(), MARKET_DATA_BUFFER), willFail, trace);
                 new Thread(agent).start();
                 if (willFail) {
                     System.out.printf("Agent %s will simulate failure.%n", agentId);
                 }
             }
             System.out.printf("Started %d trading agents.%n", numberOfAgents);
+
+            if (metricsServer != null) {
+                String host = config.getString("sim.discovery.advertiseHost", "localhost");
+                AgentProcess process = new AgentProcess(processId, host, metricsServer.getAddress().getPort(), agentIds);
+                startRegistration(market, process, config.getLong("sim.discovery.refreshMs", 10000));
+            }
         } catch (Exception e) {
             System.err.println("AgentLauncher exception: " + e.toString());
             e.printStackTrace();
         }
     }
+
+    // Keeps renewing this process's service discovery lease on the MarketNode.
+    private static void startRegistration(MarketNodeRemote market, AgentProcess process, long refreshMs) {
+        Thread registration = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    market.registerAgentProcess(process);
+                } catch (RemoteException e) {
+                    System.err.println("Could not register with MarketNode for service discovery: " + e.getMessage());
+                }
+                try {
+                    Thread.sleep(refreshMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        registration.setDaemon(true);
+        registration.start();
+    }
 }
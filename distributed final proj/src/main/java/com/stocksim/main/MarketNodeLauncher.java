@@ -1,5 +1,6 @@
 package com.stocksim.main;
 
+import com.stocksim.config.SimulationConfig;
 import com.stocksim.core.MarketNode;
 
 import java.rmi.Naming;
@@ -15,7 +16,7 @@ public class MarketNodeLauncher {
             } catch (Exception e) {
                 System.out.println("RMI registry already running.");
             }
-            MarketNode marketNode = new MarketNode();
+            MarketNode marketNode = new MarketNode(SimulationConfig.load());
             String rmiUrl = "//localhost/" + MarketNode.RMI_NAME;
             Naming.rebind(rmiUrl, marketNode);
             System.out.println("MarketNode is ready and bound to " + rmiUrl);
@@ -0,0 +1,177 @@
+package com.stocksim.metrics;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams causal trace records to a local file, one JSON object per line, for
+ * offline analysis (e.g. finding the critical path of an order through the
+ * system). Every process writes its own file per start; events are named
+ * "node#n", where n is the node's own vector clock entry, so edges from
+ * different files can be joined without any extra IDs. Vector clock entries
+ * keep increasing across restarts (see VectorClock), so event names stay
+ * unique too.
+ *
+ * Record types:
+ *   recv  - a happens-before edge from a send event on one node to the receive
+ *           event on another, with the hop latency (wall clock, so it's only
+ *           as good as the clock sync between the two hosts).
+ *   trade - a trade, the event it happened in and the event that put the
+ *           resting order in the book.
+ *
+ * Writing happens on a background thread. If it can't keep up, records are
+ * dropped (and counted) rather than slowing down the caller. Call close() on
+ * the way out (e.g. from a shutdown hook), or the last batch may never make
+ * it to the file.
+ */
+public class CausalTrace implements Closeable {
+
+    private static final int QUEUE_SIZE = 100000;
+    private static final int MAX_BATCH = 1000;
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+    // Queued by close() to tell the writer to finish. Compared by identity.
+    private static final String END = new String("end");
+
+    private final Path file;
+    private final BlockingQueue<String> records = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final BufferedWriter writer;
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    /**
+     * Opens a new trace file in the directory, named after the process and
+     * the time it started, so a restart never appends to an older run's file.
+     */
+    public CausalTrace(Path directory, String name) throws IOException {
+        this.file = directory.resolve(name + "-" + System.currentTimeMillis() + ".jsonl");
+        Files.createDirectories(directory);
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        this.writerThread = new Thread(this::runWriter, "causal-trace");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        System.out.println("Writing causal trace to " + file.toAbsolutePath());
+    }
+
+    /** The name of a node's n-th event. */
+    public static String eventId(String nodeId, long time) {
+        return nodeId + "#" + time;
+    }
+
+    /** Wall clock time in microseconds, used for the per-hop latencies. */
+    public static long currentTimeMicros() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    }
+
+    /**
+     * Records that the "to" event received a message sent at the "from" event.
+     * @param from    The send event, or null if it isn't known (then tradeId says where it came from).
+     * @param tradeId For market data, the trade that was received.
+     */
+    public void receive(String from, String to, String messageType, String orderId, String tradeId, long sentAtMicros) {
+        StringBuilder record = new StringBuilder(160).append("{\"type\":\"recv\"");
+        field(record, "from", from);
+        field(record, "to", to);
+        field(record, "message", messageType);
+        field(record, "orderId", orderId);
+        field(record, "tradeId", tradeId);
+        record.append(",\"latencyUs\":").append(currentTimeMicros() - sentAtMicros).append('}');
+        offer(record.toString());
+    }
+
+    /**
+     * Records a trade.
+     * @param event        The event (on the MarketNode) the trade happened in.
+     * @param restingEvent The event that put the resting order in the book, null
+     *                     if it's not known (e.g. it was restored from a snapshot).
+     */
+    public void trade(String tradeId, String event, String restingEvent, String symbol, int quantity, double price) {
+        StringBuilder record = new StringBuilder(160).append("{\"type\":\"trade\"");
+        field(record, "tradeId", tradeId);
+        field(record, "event", event);
+        field(record, "restingEvent", restingEvent);
+        field(record, "symbol", symbol);
+        record.append(",\"quantity\":").append(quantity).append(",\"price\":").append(price).append('}');
+        offer(record.toString());
+    }
+
+    /**
+     * Writes out whatever is still queued and closes the file, waiting up to
+     * five seconds for the writer. Records that come in after this are dropped.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            records.put(END);
+            writerThread.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void offer(String record) {
+        if (closed) return;
+        if (!records.offer(record)) {
+            Metrics.CAUSAL_TRACE_DROPPED_TOTAL.inc();
+        }
+    }
+
+    private static void field(StringBuilder record, String name, String value) {
+        if (value == null) return;
+        record.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') record.append('\\');
+            if (c >= 0x20) record.append(c);
+        }
+        record.append('"');
+    }
+
+    // Writes whatever is queued and flushes whenever the queue runs dry, so the
+    // file is never more than one batch behind. Stops at the END marker.
+    private void runWriter() {
+        List<String> batch = new ArrayList<>(MAX_BATCH);
+        boolean ended = false;
+        while (!ended && !Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(records.take());
+                records.drainTo(batch, MAX_BATCH - 1);
+                for (String record : batch) {
+                    if (record == END) {
+                        ended = true;
+                        break;
+                    }
+                    writer.write(record);
+                    writer.newLine();
+                }
+                batch.clear();
+                if (ended || records.isEmpty()) {
+                    writer.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                System.err.printf("Could not write causal trace to %s: %s%n", file, e.getMessage());
+                batch.clear();
+            }
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.printf("Could not close causal trace %s: %s%n", file, e.getMessage());
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.stocksim.metrics;
 
+import com.sun.net.httpserver.HttpServer;
+import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 import io.prometheus.client.exporter.HTTPServer;
 import io.prometheus.client.hotspot.DefaultExports;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 
 /**
  * Centralized registry for all Prometheus metrics.
@@ -25,6 +29,22 @@ public class Metrics {
             .labelNames("node_id")
             .register();
 
+    public static final Gauge RESTING_ORDERS = Gauge.build()
+            .name("resting_orders")
+            .help("Number of orders currently resting in the MarketNode's order books.")
+            .register();
+
+    public static final Gauge INBOUND_QUEUE_DEPTH = Gauge.build()
+            .name("inbound_queue_depth")
+            .help("Messages waiting for the MarketNode's writer thread.")
+            .labelNames("queue") // "heartbeat" or "order"
+            .register();
+
+    public static final Gauge STATE_VERSION = Gauge.build()
+            .name("published_state_version")
+            .help("Number of SystemState versions the MarketNode has published since it started.")
+            .register();
+
     // --- Counters ---
     public static final Counter TRADES_TOTAL = Counter.build()
             .name("trade_count_total")
@@ -32,6 +52,12 @@ public class Metrics {
             .labelNames("order_type") // "BUY" or "SELL"
             .register();
 
+    public static final Counter ORDER_REQUESTS_TOTAL = Counter.build()
+            .name("order_request_total")
+            .help("Total number of ORDER/CANCEL/REPLACE requests handled by the MarketNode, by outcome.")
+            .labelNames("request_type", "status")
+            .register();
+
     public static final Counter HEARTBEATS_TOTAL = Counter.build()
             .name("heartbeat_count_total")
             .help("Total number of heartbeats sent by an agent.")
@@ -50,25 +76,57 @@ public class Metrics {
             .labelNames("node_id")
             .register();
 
+    public static final Counter SHED_TOTAL = Counter.build()
+            .name("message_shed_total")
+            .help("Total number of messages the MarketNode turned away instead of processing.")
+            .labelNames("message_type", "reason") // reason: "rate_limit", "queue_full" or "stale"
+            .register();
+
+    public static final Counter THROTTLED_TOTAL = Counter.build()
+            .name("throttled_total")
+            .help("Total number of times an agent was told to back off by the MarketNode.")
+            .labelNames("agent_id")
+            .register();
+
+    public static final Counter CAUSAL_TRACE_DROPPED_TOTAL = Counter.build()
+            .name("causal_trace_dropped_total")
+            .help("Total number of causal trace records dropped because the trace writer fell behind.")
+            .register();
+
     public static final Counter FAILURES_DETECTED_TOTAL = Counter.build()
             .name("failure_detected_total")
             .help("Total number of agent failures detected by the MarketNode.")
             .register();
 
+    // --- Histograms ---
+    public static final Histogram QUEUE_WAIT_SECONDS = Histogram.build()
+            .name("inbound_queue_wait_seconds")
+            .help("How long a message waited in the MarketNode's intake queue before being processed.")
+            .labelNames("message_type")
+            .buckets(0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 2, 5)
+            .register();
+
     /**
-     * Initializes and starts the Prometheus HTTP server.
-     * @param port The port for the /metrics endpoint.
+     * Initializes and starts the Prometheus HTTP server. Call this once per
+     * process; every metric is labelled with its node/agent, so one endpoint
+     * covers all the agents in a JVM.
+     * @param port The port for the /metrics endpoint, or 0 to pick a free one.
+     * @return The underlying HTTP server (so callers can serve extra paths next
+     *         to /metrics), or null if it couldn't be started.
      */
-    public static void startMetricsServer(int port) {
+    public static HttpServer startMetricsServer(int port) {
         try {
             // Initialize JVM metrics
             DefaultExports.initialize();
             // Start the HTTP server
-            new HTTPServer(port);
-            System.out.println("Prometheus /metrics endpoint started on port: " + port);
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 3);
+            new HTTPServer(server, CollectorRegistry.defaultRegistry, false);
+            System.out.println("Prometheus /metrics endpoint started on port: " + server.getAddress().getPort());
+            return server;
         } catch (IOException e) {
             System.err.println("Failed to start Prometheus metrics server on port " + port);
             e.printStackTrace();
+            return null;
         }
     }
 }
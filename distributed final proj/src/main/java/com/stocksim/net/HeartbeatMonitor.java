@@ -12,6 +12,16 @@ public class HeartbeatMonitor {
         lastSeenTimestamps.put(agentId, System.currentTimeMillis());
     }
 
+    /** A copy of when each agent was last heard from, for snapshots. */
+    public Map<String, Long> getLastSeenTimestamps() {
+        return new HashMap<>(lastSeenTimestamps);
+    }
+
+    /** Puts back the last-seen times from a snapshot. */
+    public void restore(Map<String, Long> lastSeen) {
+        lastSeenTimestamps.putAll(lastSeen);
+    }
+
     public synchronized Map<String, String> getStatuses(long timeoutMillis) {
         Map<String, String> statuses = new HashMap<>();
         long now = System.currentTimeMillis();
@@ -0,0 +1,59 @@
+package com.stocksim.net;
+
+import com.stocksim.data.Trade;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The agent-process side of the market data stream. The whole process subscribes
+ * to the MarketNode once through this object, and it hands each trade to the
+ * local agents that trade that symbol. That way 100 agents in one JVM are still
+ * just one RMI callback for the market.
+ */
+public class MarketDataFeed extends UnicastRemoteObject implements MarketDataListener {
+
+    // Symbol -> the queues of the agents that trade it, so a trade only costs
+    // as much as the number of agents that actually want it. Agents register
+    // while trades are already coming in, hence the concurrent collections.
+    private final Map<String, List<BlockingQueue<Trade>>> subscribers = new ConcurrentHashMap<>();
+
+    public MarketDataFeed() throws RemoteException {
+        super();
+    }
+
+    /**
+     * Registers a local consumer for the given symbols.
+     * @param symbols The symbols the consumer cares about.
+     * @param capacity How many trades to buffer before new ones are dropped.
+     * @return The queue the trades will show up on.
+     */
+    public BlockingQueue<Trade> register(Collection<String> symbols, int capacity) {
+        BlockingQueue<Trade> queue = new ArrayBlockingQueue<>(capacity);
+        for (String symbol : new HashSet<>(symbols)) {
+            subscribers.computeIfAbsent(symbol, s -> new CopyOnWriteArrayList<>()).add(queue);
+        }
+        return queue;
+    }
+
+    @Override
+    public void onTrades(List<Trade> trades) {
+        for (Trade trade : trades) {
+            List<BlockingQueue<Trade>> queues = subscribers.get(trade.getStockSymbol());
+            if (queues == null) continue;
+            for (BlockingQueue<Trade> queue : queues) {
+                // If an agent can't keep up I'd rather drop old market data
+                // than block the RMI thread the market is calling us on.
+                queue.offer(trade);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.stocksim.net;
+
+import com.stocksim.data.Trade;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * RMI callback interface the MarketNode uses to push trades out to subscribers.
+ * Trades are sent in batches so a busy market doesn't make one remote call per trade.
+ */
+public interface MarketDataListener extends Remote {
+    void onTrades(List<Trade> trades) throws RemoteException;
+}
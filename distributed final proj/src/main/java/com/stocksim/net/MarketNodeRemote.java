@@ -1,5 +1,7 @@
 package com.stocksim.net;
 
+import com.stocksim.data.AgentProcess;
+import com.stocksim.data.ExecutionReport;
 import com.stocksim.data.SystemState;
 import com.stocksim.data.TradeMessage;
 
@@ -7,6 +9,11 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 
 public interface MarketNodeRemote extends Remote {
-    void submitMessage(TradeMessage message) throws RemoteException;
+    ExecutionReport submitMessage(TradeMessage message) throws RemoteException;
     SystemState getState() throws RemoteException;
+    /** Returns the serialized SystemState if it's newer than knownVersion, otherwise null. */
+    byte[] getStateIfNewer(long knownVersion) throws RemoteException;
+    void subscribe(MarketDataListener listener) throws RemoteException;
+    /** Registers (or renews the lease of) an agent process for metrics service discovery. */
+    void registerAgentProcess(AgentProcess process) throws RemoteException;
 }
@@ -0,0 +1,86 @@
+package com.stocksim.net;
+
+import com.stocksim.data.AgentProcess;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the live agent processes so Prometheus can find them on its
+ * own. Each process re-registers every few seconds (a lease); if it stops, it
+ * drops out after the TTL. The list is served in Prometheus' HTTP service
+ * discovery format, so prometheus.yml only needs the MarketNode's URL.
+ */
+public class ServiceRegistry implements HttpHandler {
+
+    public static final String HTTP_PATH = "/sd/agents";
+
+    private final long ttlMillis;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    public ServiceRegistry(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /** Registers a process or renews its lease. */
+    public void register(AgentProcess process) {
+        Lease previous = leases.put(process.getProcessId(), new Lease(process, System.currentTimeMillis()));
+        if (previous == null) {
+            System.out.printf("ServiceRegistry: Agent process %s registered (%s:%d, %d agents)%n",
+                    process.getProcessId(), process.getHost(), process.getMetricsPort(), process.getAgentIds().size());
+        }
+    }
+
+    /**
+     * Builds the Prometheus HTTP SD response: one target group per live process.
+     */
+    public String toPrometheusTargets() {
+        long now = System.currentTimeMillis();
+        StringBuilder json = new StringBuilder("[");
+        Iterator<Lease> it = leases.values().iterator();
+        while (it.hasNext()) {
+            Lease lease = it.next();
+            if (now - lease.renewedAt > ttlMillis) {
+                System.out.printf("ServiceRegistry: Agent process %s expired%n", lease.process.getProcessId());
+                it.remove();
+                continue;
+            }
+            AgentProcess process = lease.process;
+            if (json.length() > 1) json.append(',');
+            json.append("{\"targets\":[\"").append(escape(process.getHost())).append(':').append(process.getMetricsPort())
+                    .append("\"],\"labels\":{\"process_id\":\"").append(escape(process.getProcessId()))
+                    .append("\",\"agent_count\":\"").append(process.getAgentIds().size()).append("\"}}");
+        }
+        return json.append(']').toString();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = toPrometheusTargets().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static class Lease {
+        private final AgentProcess process;
+        private final long renewedAt;
+
+        private Lease(AgentProcess process, long renewedAt) {
+            this.process = process;
+            this.renewedAt = renewedAt;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.stocksim.persistence;
+
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+import com.stocksim.data.OrderType;
+import com.stocksim.data.Trade;
+import com.stocksim.data.TradeMessage;
+import com.stocksim.data.VectorTimestamp;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hand-written binary encoding for the snapshot and journal files. I didn't
+ * use Java serialization here because it writes class descriptors into every
+ * stream and is a lot bigger and slower for millions of small records.
+ */
+final class BinaryCodec {
+
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+    private BinaryCodec() {
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeOrder(DataOutput out, Order order) throws IOException {
+        writeString(out, order.getOrderId());
+        writeString(out, order.getAgentId());
+        out.writeUTF(order.getStockSymbol());
+        out.writeInt(order.getQuantity());
+        out.writeDouble(order.getPrice());
+        out.writeByte(order.getType().ordinal());
+    }
+
+    static Order readOrder(DataInput in) throws IOException {
+        String orderId = readString(in);
+        String agentId = readString(in);
+        String symbol = in.readUTF();
+        int quantity = in.readInt();
+        double price = in.readDouble();
+        OrderType type = ORDER_TYPES[in.readByte()];
+        return new Order(orderId, agentId, symbol, quantity, price, type);
+    }
+
+    static void writeTrade(DataOutput out, Trade trade) throws IOException {
+        out.writeUTF(trade.getTradeId());
+        writeString(out, trade.getAgentId());
+        writeString(out, trade.getCounterpartyId());
+        writeString(out, trade.getOrderId());
+        writeString(out, trade.getCounterpartyOrderId());
+        out.writeByte(trade.getSide().ordinal());
+        out.writeUTF(trade.getStockSymbol());
+        out.writeInt(trade.getQuantity());
+        out.writeDouble(trade.getPrice());
+        out.writeLong(trade.getLamportTimestamp());
+        out.writeLong(trade.getSystemTimeMillis());
+        writeVector(out, trade.getVectorTimestamp());
+    }
+
+    static Trade readTrade(DataInput in) throws IOException {
+        return new Trade(in.readUTF(), readString(in), readString(in), readString(in), readString(in),
+                ORDER_TYPES[in.readByte()], in.readUTF(), in.readInt(), in.readDouble(), in.readLong(), in.readLong(),
+                readVector(in));
+    }
+
+    // A vector timestamp is its entry count (-1 for null) and then the entries.
+    static void writeVector(DataOutput out, VectorTimestamp vector) throws IOException {
+        out.writeInt(vector == null ? -1 : vector.size());
+        if (vector == null) return;
+        for (int i = 0; i < vector.size(); i++) {
+            out.writeUTF(vector.getNodeId(i));
+            out.writeLong(vector.getCounter(i));
+        }
+    }
+
+    static VectorTimestamp readVector(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) return null;
+        Map<String, Long> entries = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            entries.put(in.readUTF(), in.readLong());
+        }
+        return VectorTimestamp.of(entries);
+    }
+
+    static void writeMessage(DataOutput out, TradeMessage message) throws IOException {
+        writeString(out, message.getSenderId());
+        writeString(out, message.getReceiverId());
+        out.writeByte(message.getType().ordinal());
+        out.writeLong(message.getLamportTimestamp());
+        out.writeBoolean(message.getOrder() != null);
+        if (message.getOrder() != null) writeOrder(out, message.getOrder());
+        writeVector(out, message.getVectorTimestamp());
+    }
+
+    static TradeMessage readMessage(DataInput in) throws IOException {
+        String senderId = readString(in);
+        String receiverId = readString(in);
+        MessageType type = MESSAGE_TYPES[in.readByte()];
+        long lamportTimestamp = in.readLong();
+        Order order = in.readBoolean() ? readOrder(in) : null;
+        // The send time only matters for the live trace, so it isn't journaled.
+        return new TradeMessage(senderId, receiverId, type, order, lamportTimestamp, readVector(in), 0);
+    }
+}
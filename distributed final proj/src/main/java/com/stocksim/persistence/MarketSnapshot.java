@@ -0,0 +1,50 @@
+package com.stocksim.persistence;
+
+import com.stocksim.data.Order;
+import com.stocksim.data.Trade;
+import com.stocksim.data.VectorTimestamp;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A consistent copy of the MarketNode's state as of one journal sequence
+ * number. Everything in the journal after that number still has to be replayed
+ * on top of it.
+ */
+public class MarketSnapshot {
+    private final long sequence;
+    private final long lamportTime;
+    private final List<Order> restingOrders;
+    private final Map<String, Map<String, Long>> positions;
+    private final Map<String, Long> lastHeartbeats;
+    private final List<Trade> recentTrades;
+    private final VectorTimestamp vectorTime;
+
+    /**
+     * @param restingOrders Every resting order with its open quantity, in book
+     *                      priority order so restoring them keeps time priority.
+     * @param positions     Net position per agent and symbol.
+     * @param vectorTime    The MarketNode's vector clock, or null if causality tracking is off.
+     */
+    public MarketSnapshot(long sequence, long lamportTime, List<Order> restingOrders,
+                          Map<String, Map<String, Long>> positions, Map<String, Long> lastHeartbeats,
+                          List<Trade> recentTrades, VectorTimestamp vectorTime) {
+        this.sequence = sequence;
+        this.lamportTime = lamportTime;
+        this.restingOrders = Collections.unmodifiableList(restingOrders);
+        this.positions = Collections.unmodifiableMap(positions);
+        this.lastHeartbeats = Collections.unmodifiableMap(lastHeartbeats);
+        this.recentTrades = Collections.unmodifiableList(recentTrades);
+        this.vectorTime = vectorTime;
+    }
+
+    public long getSequence() { return sequence; }
+    public long getLamportTime() { return lamportTime; }
+    public List<Order> getRestingOrders() { return restingOrders; }
+    public Map<String, Map<String, Long>> getPositions() { return positions; }
+    public Map<String, Long> getLastHeartbeats() { return lastHeartbeats; }
+    public List<Trade> getRecentTrades() { return recentTrades; }
+    public VectorTimestamp getVectorTime() { return vectorTime; }
+}
@@ -0,0 +1,211 @@
+package com.stocksim.persistence;
+
+import com.stocksim.data.TradeMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An append-only log of every message the MarketNode accepted, each tagged with
+ * a sequence number. It's split into segments named journal-&lt;firstSequence&gt;.log
+ * and a new segment starts at every snapshot, so once a snapshot is safely on
+ * disk all the segments before it can simply be deleted.
+ *
+ * Each record is its sequence number, its length and then the encoded message,
+ * so a record cut off by a crash is recognised as such and can't throw the
+ * records after it out of step.
+ */
+public class MessageJournal implements Closeable {
+
+    /** Receives the replayed messages in order. */
+    public interface Handler {
+        void accept(long sequence, TradeMessage message);
+    }
+
+    private static final int MAGIC = 0x4D4B4A4C; // "MKJL"
+    private static final int VERSION = 2; // 2: length-prefixed records
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private DataOutputStream out;
+    private long segmentStart;
+    // Scratch space for encoding one record before any of it goes to the file.
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+    public MessageJournal(Path directory, long nextSequence) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        openSegment(nextSequence);
+    }
+
+    /**
+     * Appends a message. It's flushed to the OS right away, so it survives the
+     * process crashing (not the machine, I don't fsync every message).
+     * The message is encoded completely before anything is written, so one that
+     * can't be encoded leaves the journal untouched.
+     * @throws IOException If the message can't be encoded or written. Either
+     *                     way it isn't in the journal, so it must not be applied.
+     */
+    public synchronized void append(long sequence, TradeMessage message) throws IOException {
+        recordBytes.reset();
+        try {
+            BinaryCodec.writeMessage(record, message);
+        } catch (RuntimeException e) {
+            throw new IOException("message #" + sequence + " can't be encoded: " + e, e);
+        }
+        try {
+            out.writeLong(sequence);
+            out.writeInt(recordBytes.size());
+            recordBytes.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            // Part of the record may have reached the file. Carry on in a fresh
+            // segment so the next record isn't written behind a torn one.
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // the old segment is being abandoned anyway
+            }
+            openSegment(sequence);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the current segment and starts a new one whose first entry will be
+     * nextSequence. Called at the point a snapshot is taken.
+     */
+    public synchronized void rotate(long nextSequence) throws IOException {
+        out.close();
+        openSegment(nextSequence);
+    }
+
+    /**
+     * Deletes the segments whose entries are all covered by a snapshot at the
+     * given sequence number. The open segment is never deleted.
+     */
+    public synchronized void deleteSegmentsCoveredBy(long snapshotSequence) throws IOException {
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size() - 1; i++) {
+            // A segment ends right before the next one starts.
+            if (startOf(segments.get(i + 1)) <= snapshotSequence + 1 && startOf(segments.get(i)) != segmentStart) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    /**
+     * Replays every journaled message with a sequence number after afterSequence.
+     * A record cut off by a crash at the end of a segment is ignored.
+     * @throws IOException If the journal doesn't continue without a gap from
+     *                     afterSequence + 1, e.g. because the snapshot that
+     *                     covered the deleted segments couldn't be read.
+     *                     Starting anyway would silently lose state.
+     * @return The last sequence number replayed (or afterSequence if there was nothing).
+     */
+    public static long replay(Path directory, long afterSequence, Handler handler) throws IOException {
+        long last = afterSequence;
+        if (!Files.isDirectory(directory)) return last;
+        for (Path segment : listSegments(directory)) {
+            if (startOf(segment) > last + 1) {
+                throw new IOException("journal gap: expected #" + (last + 1) + " next, but " + segment
+                        + " starts later (the snapshot covering the missing part is missing or unreadable)");
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16))) {
+                if (!readHeader(in, segment)) continue; // crashed before the header was even written
+                while (true) {
+                    long sequence;
+                    byte[] bytes;
+                    try {
+                        sequence = in.readLong();
+                        int length = in.readInt();
+                        if (length < 0 || length > MAX_RECORD_BYTES) {
+                            throw new IOException(segment + " is corrupt: record #" + sequence + " claims " + length + " bytes");
+                        }
+                        bytes = new byte[length];
+                        in.readFully(bytes);
+                    } catch (EOFException e) {
+                        break; // a torn record at the end of the segment
+                    }
+                    if (sequence > last + 1) {
+                        throw new IOException("journal gap: expected #" + (last + 1) + " next, but " + segment
+                                + " has #" + sequence);
+                    }
+                    if (sequence > last) {
+                        TradeMessage message = BinaryCodec.readMessage(new DataInputStream(new ByteArrayInputStream(bytes)));
+                        handler.accept(sequence, message);
+                        last = sequence;
+                    }
+                }
+            }
+        }
+        return last;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    // If a segment with this name is already there it can't hold a complete
+    // record we still need (replay would have moved past firstSequence), at most
+    // a torn one from a crash, so it's safe to start it over.
+    private void openSegment(long firstSequence) throws IOException {
+        this.segmentStart = firstSequence;
+        Path file = directory.resolve(PREFIX + firstSequence + SUFFIX);
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+    }
+
+    // Each segment starts with a magic number and format version, so a segment
+    // written by an incompatible build fails loudly instead of replaying garbage.
+    private static boolean readHeader(DataInputStream in, Path segment) throws IOException {
+        int magic;
+        int version;
+        try {
+            magic = in.readInt();
+            version = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException(segment + " is not a journal segment (or a different version)");
+        }
+        return true;
+    }
+
+    // Oldest first.
+    private static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(PREFIX)
+                            && p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(MessageJournal::startOf))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
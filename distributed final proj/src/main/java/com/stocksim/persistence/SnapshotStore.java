@@ -0,0 +1,170 @@
+package com.stocksim.persistence;
+
+import com.stocksim.data.Order;
+import com.stocksim.data.Trade;
+import com.stocksim.data.VectorTimestamp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes and reads MarketNode snapshots as files named snapshot-&lt;sequence&gt;.bin.
+ * A snapshot is written to a temp file, synced and then renamed, so a crash in
+ * the middle of writing never leaves a half-written "latest" snapshot behind.
+ */
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x4D4B534E; // "MKSN"
+    private static final int VERSION = 2; // 2: added the vector clock
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+    private final int retained;
+
+    /**
+     * @param retained How many snapshots to keep. Keeping more than one means a
+     *                 corrupt latest snapshot can fall back to the one before.
+     */
+    public SnapshotStore(Path directory, int retained) throws IOException {
+        this.directory = directory;
+        this.retained = Math.max(1, retained);
+        Files.createDirectories(directory);
+    }
+
+    public void write(MarketSnapshot snapshot) throws IOException {
+        Path target = directory.resolve(PREFIX + snapshot.getSequence() + SUFFIX);
+        Path temp = directory.resolve(PREFIX + snapshot.getSequence() + SUFFIX + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.getSequence());
+            out.writeLong(snapshot.getLamportTime());
+
+            out.writeInt(snapshot.getRestingOrders().size());
+            for (Order order : snapshot.getRestingOrders()) {
+                BinaryCodec.writeOrder(out, order);
+            }
+
+            out.writeInt(snapshot.getPositions().size());
+            for (Map.Entry<String, Map<String, Long>> agent : snapshot.getPositions().entrySet()) {
+                out.writeUTF(agent.getKey());
+                out.writeInt(agent.getValue().size());
+                for (Map.Entry<String, Long> position : agent.getValue().entrySet()) {
+                    out.writeUTF(position.getKey());
+                    out.writeLong(position.getValue());
+                }
+            }
+
+            out.writeInt(snapshot.getLastHeartbeats().size());
+            for (Map.Entry<String, Long> heartbeat : snapshot.getLastHeartbeats().entrySet()) {
+                out.writeUTF(heartbeat.getKey());
+                out.writeLong(heartbeat.getValue());
+            }
+
+            out.writeInt(snapshot.getRecentTrades().size());
+            for (Trade trade : snapshot.getRecentTrades()) {
+                BinaryCodec.writeTrade(out, trade);
+            }
+            BinaryCodec.writeVector(out, snapshot.getVectorTime());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteOldSnapshots();
+    }
+
+    /**
+     * Loads the newest snapshot that can be read, or null if there isn't one.
+     */
+    public MarketSnapshot loadLatest() throws IOException {
+        for (Path file : listSnapshots()) {
+            try {
+                return read(file);
+            } catch (IOException | RuntimeException e) {
+                System.err.printf("Skipping unreadable snapshot %s: %s%n", file, e);
+            }
+        }
+        return null;
+    }
+
+    private MarketSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a snapshot file (or a different version)");
+            }
+            long sequence = in.readLong();
+            long lamportTime = in.readLong();
+
+            int orderCount = in.readInt();
+            List<Order> restingOrders = new ArrayList<>(orderCount);
+            for (int i = 0; i < orderCount; i++) {
+                restingOrders.add(BinaryCodec.readOrder(in));
+            }
+
+            int agentCount = in.readInt();
+            Map<String, Map<String, Long>> positions = new HashMap<>();
+            for (int i = 0; i < agentCount; i++) {
+                String agentId = in.readUTF();
+                int symbolCount = in.readInt();
+                Map<String, Long> agentPositions = new HashMap<>();
+                for (int j = 0; j < symbolCount; j++) {
+                    agentPositions.put(in.readUTF(), in.readLong());
+                }
+                positions.put(agentId, agentPositions);
+            }
+
+            int heartbeatCount = in.readInt();
+            Map<String, Long> lastHeartbeats = new HashMap<>();
+            for (int i = 0; i < heartbeatCount; i++) {
+                lastHeartbeats.put(in.readUTF(), in.readLong());
+            }
+
+            int tradeCount = in.readInt();
+            List<Trade> recentTrades = new ArrayList<>(tradeCount);
+            for (int i = 0; i < tradeCount; i++) {
+                recentTrades.add(BinaryCodec.readTrade(in));
+            }
+            VectorTimestamp vectorTime = BinaryCodec.readVector(in);
+            return new MarketSnapshot(sequence, lamportTime, restingOrders, positions, lastHeartbeats, recentTrades,
+                    vectorTime);
+        }
+    }
+
+    private void deleteOldSnapshots() throws IOException {
+        List<Path> snapshots = listSnapshots();
+        for (int i = retained; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    // Newest first.
+    private List<Path> listSnapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(PREFIX)
+                            && p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(SnapshotStore::sequenceOf).reversed())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
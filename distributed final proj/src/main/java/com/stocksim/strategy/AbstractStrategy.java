@@ -0,0 +1,161 @@
+package com.stocksim.strategy;
+
+import com.stocksim.data.ExecutionReport;
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+import com.stocksim.data.OrderType;
+import com.stocksim.data.Trade;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Shared bookkeeping for the built-in strategies: the last traded price per
+ * symbol, a per-symbol cooldown and the strategy's own working orders. The
+ * cooldown matters because every order turns into market data for everyone
+ * else, so without it a handful of reactive agents can feed off each other
+ * and flood the market.
+ *
+ * Working orders live in named "slots" (e.g. "AAPL:BUY"). Placing into a slot
+ * that already has a resting order replaces it instead of adding another one,
+ * so a strategy never leaves more than one order per slot in the book.
+ */
+public abstract class AbstractStrategy implements TradingStrategy {
+
+    protected final String agentId;
+    protected final List<String> symbols;
+    protected final Random random;
+    private final long cooldownMs;
+    private final Map<String, Double> lastPrices = new HashMap<>();
+    private final Map<String, Long> lastActionTimes = new HashMap<>();
+    // orderId -> the order as it's resting now (quantity = what's left open)
+    private final Map<String, Order> workingOrders = new HashMap<>();
+    private final Map<String, String> slots = new HashMap<>();
+    private long orderSequence = 0;
+
+    protected AbstractStrategy(String agentId, List<String> symbols, Random random, long cooldownMs) {
+        if (symbols.isEmpty()) {
+            throw new IllegalArgumentException("A strategy needs at least one symbol");
+        }
+        this.agentId = agentId;
+        this.symbols = Collections.unmodifiableList(symbols);
+        this.random = random;
+        this.cooldownMs = cooldownMs;
+    }
+
+    @Override
+    public List<String> getSymbols() {
+        return symbols;
+    }
+
+    @Override
+    public final List<OrderAction> onTrade(Trade trade) {
+        lastPrices.put(trade.getStockSymbol(), trade.getPrice());
+        // If one of my resting orders was on the passive side, this trade is my fill.
+        Order resting = workingOrders.get(trade.getCounterpartyOrderId());
+        if (resting != null) {
+            int left = resting.getQuantity() - trade.getQuantity();
+            if (left > 0) {
+                workingOrders.put(resting.getOrderId(), resting.withQuantityAndPrice(left, resting.getPrice()));
+            } else {
+                workingOrders.remove(resting.getOrderId());
+            }
+        }
+        return react(trade);
+    }
+
+    /** Hook for subclasses; the last price and working orders have already been updated. */
+    protected List<OrderAction> react(Trade trade) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<OrderAction> onIdle() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void onExecution(ExecutionReport report) {
+        if (report.getOrderId() == null) return;
+        switch (report.getStatus()) {
+            case NEW:
+            case PARTIALLY_FILLED:
+            case REPLACED:
+                Order order = workingOrders.get(report.getOrderId());
+                if (order != null) {
+                    workingOrders.put(order.getOrderId(),
+                            order.withQuantityAndPrice(report.getRemainingQuantity(), order.getPrice()));
+                }
+                break;
+            case THROTTLED:
+                // The market didn't look at the request, so nothing changed. If my
+                // view is now off, the next replace gets rejected and fixes it.
+                break;
+            default:
+                workingOrders.remove(report.getOrderId());
+                break;
+        }
+    }
+
+    /**
+     * Until a symbol has traded I derive a stable starting price from its name,
+     * so every agent agrees on roughly where the market is.
+     */
+    public static double referencePrice(String symbol) {
+        return 10.0 + Math.floorMod(symbol.hashCode(), 19000) / 100.0;
+    }
+
+    protected double lastPrice(String symbol) {
+        return lastPrices.getOrDefault(symbol, referencePrice(symbol));
+    }
+
+    protected String randomSymbol() {
+        return symbols.get(random.nextInt(symbols.size()));
+    }
+
+    /** Returns true (and starts a new cooldown) if this symbol may be traded now. */
+    protected boolean tryAct(String symbol) {
+        long now = System.currentTimeMillis();
+        Long last = lastActionTimes.get(symbol);
+        if (last != null && now - last < cooldownMs) {
+            return false;
+        }
+        lastActionTimes.put(symbol, now);
+        return true;
+    }
+
+    /**
+     * Puts an order into a slot: a REPLACE if the slot's last order is still
+     * working, otherwise a NEW order with a fresh ID.
+     */
+    protected OrderAction place(String slot, String symbol, OrderType type, int quantity, double price) {
+        // Round to cents so prices cluster on a tick grid like a real market.
+        double roundedPrice = Math.max(0.01, Math.round(price * 100.0) / 100.0);
+        Order working = workingOrders.get(slots.get(slot));
+        if (working != null) {
+            Order replacement = working.withQuantityAndPrice(quantity, roundedPrice);
+            workingOrders.put(replacement.getOrderId(), replacement);
+            return new OrderAction(MessageType.REPLACE, replacement);
+        }
+        Order order = new Order(agentId + "-" + (++orderSequence), agentId, symbol, quantity, roundedPrice, type);
+        workingOrders.put(order.getOrderId(), order);
+        slots.put(slot, order.getOrderId());
+        return new OrderAction(MessageType.ORDER, order);
+    }
+
+    /** Cancels the slot's order if it's still working. */
+    protected List<OrderAction> cancel(String slot) {
+        Order working = workingOrders.get(slots.get(slot));
+        if (working == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new OrderAction(MessageType.CANCEL, working));
+    }
+
+    protected static String slot(String symbol, OrderType type) {
+        return symbol + ":" + type;
+    }
+}
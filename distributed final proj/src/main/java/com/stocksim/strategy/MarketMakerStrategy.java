@@ -0,0 +1,55 @@
+package com.stocksim.strategy;
+
+import com.stocksim.data.OrderType;
+import com.stocksim.data.Trade;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Keeps a two-sided quote (a bid just below and an ask just above the last
+ * price) on its symbols. It requotes a symbol when it trades and quotes a
+ * random symbol when the market is quiet. This is what gives the other
+ * strategies something to trade against. Requotes are sent as REPLACEs of
+ * the resting quote, so like a real market maker it sends far more
+ * cancels/replaces than it gets trades.
+ */
+public class MarketMakerStrategy extends AbstractStrategy {
+
+    private final double halfSpread;
+    private final int quoteSize;
+
+    public MarketMakerStrategy(String agentId, List<String> symbols, Random random, long cooldownMs,
+                               double spread, int quoteSize) {
+        super(agentId, symbols, random, cooldownMs);
+        this.halfSpread = spread / 2.0;
+        this.quoteSize = quoteSize;
+    }
+
+    @Override
+    public String getName() {
+        return "marketmaker";
+    }
+
+    @Override
+    protected List<OrderAction> react(Trade trade) {
+        return quote(trade.getStockSymbol());
+    }
+
+    @Override
+    public List<OrderAction> onIdle() {
+        return quote(randomSymbol());
+    }
+
+    private List<OrderAction> quote(String symbol) {
+        if (!tryAct(symbol)) {
+            return Collections.emptyList();
+        }
+        double mid = lastPrice(symbol);
+        return Arrays.asList(
+                place(slot(symbol, OrderType.BUY), symbol, OrderType.BUY, quoteSize, mid * (1.0 - halfSpread)),
+                place(slot(symbol, OrderType.SELL), symbol, OrderType.SELL, quoteSize, mid * (1.0 + halfSpread)));
+    }
+}
@@ -0,0 +1,51 @@
+package com.stocksim.strategy;
+
+import com.stocksim.data.OrderType;
+import com.stocksim.data.Trade;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Bets that prices come back to their average. It keeps an exponential moving
+ * average per symbol and, when the last trade is too far from it, places a
+ * resting order on the other side at the average.
+ */
+public class MeanReversionStrategy extends AbstractStrategy {
+
+    private final double alpha;
+    private final double threshold;
+    private final int orderSize;
+    private final Map<String, Double> averages = new HashMap<>();
+
+    public MeanReversionStrategy(String agentId, List<String> symbols, Random random, long cooldownMs,
+                                 double alpha, double threshold, int orderSize) {
+        super(agentId, symbols, random, cooldownMs);
+        this.alpha = alpha;
+        this.threshold = threshold;
+        this.orderSize = orderSize;
+    }
+
+    @Override
+    public String getName() {
+        return "meanreversion";
+    }
+
+    @Override
+    protected List<OrderAction> react(Trade trade) {
+        String symbol = trade.getStockSymbol();
+        double price = trade.getPrice();
+        double average = averages.getOrDefault(symbol, referencePrice(symbol));
+        averages.put(symbol, average + alpha * (price - average));
+
+        double deviation = (price - average) / average;
+        if (Math.abs(deviation) < threshold || !tryAct(symbol)) {
+            return Collections.emptyList();
+        }
+        OrderType type = deviation > 0 ? OrderType.SELL : OrderType.BUY;
+        return Collections.singletonList(place(slot(symbol, type), symbol, type, orderSize, average));
+    }
+}
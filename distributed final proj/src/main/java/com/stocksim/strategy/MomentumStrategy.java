@@ -0,0 +1,85 @@
+package com.stocksim.strategy;
+
+import com.stocksim.data.OrderType;
+import com.stocksim.data.Trade;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Follows the trend. It remembers the price a symbol had a few trades ago and
+ * if the price has moved by more than the threshold since then, it sends an
+ * aggressive order in the same direction (priced through the last trade so it
+ * crosses the book). Whatever doesn't fill is canceled once things go quiet.
+ */
+public class MomentumStrategy extends AbstractStrategy {
+
+    private final int lookback;
+    private final double threshold;
+    private final int orderSize;
+    private final Map<String, PriceWindow> windows = new HashMap<>();
+
+    public MomentumStrategy(String agentId, List<String> symbols, Random random, long cooldownMs,
+                            int lookback, double threshold, int orderSize) {
+        super(agentId, symbols, random, cooldownMs);
+        this.lookback = lookback;
+        this.threshold = threshold;
+        this.orderSize = orderSize;
+    }
+
+    @Override
+    public String getName() {
+        return "momentum";
+    }
+
+    @Override
+    protected List<OrderAction> react(Trade trade) {
+        String symbol = trade.getStockSymbol();
+        PriceWindow window = windows.computeIfAbsent(symbol, s -> new PriceWindow(lookback));
+        double oldest = window.push(trade.getPrice());
+        if (Double.isNaN(oldest) || oldest <= 0) {
+            return Collections.emptyList();
+        }
+        double move = (trade.getPrice() - oldest) / oldest;
+        if (Math.abs(move) < threshold || !tryAct(symbol)) {
+            return Collections.emptyList();
+        }
+        OrderType type = move > 0 ? OrderType.BUY : OrderType.SELL;
+        double price = trade.getPrice() * (move > 0 ? 1.0 + threshold : 1.0 - threshold);
+        return Collections.singletonList(place(slot(symbol, type), symbol, type, orderSize, price));
+    }
+
+    @Override
+    public List<OrderAction> onIdle() {
+        List<OrderAction> cancels = new ArrayList<>();
+        for (String symbol : windows.keySet()) {
+            cancels.addAll(cancel(slot(symbol, OrderType.BUY)));
+            cancels.addAll(cancel(slot(symbol, OrderType.SELL)));
+        }
+        return cancels;
+    }
+
+    /** A fixed-size ring of recent prices. */
+    static class PriceWindow {
+        private final double[] prices;
+        private int next;
+        private int size;
+
+        PriceWindow(int capacity) {
+            this.prices = new double[Math.max(1, capacity)];
+        }
+
+        /** Adds a price and returns the oldest one in the window, or NaN until it's full. */
+        double push(double price) {
+            double oldest = size == prices.length ? prices[next] : Double.NaN;
+            prices[next] = price;
+            next = (next + 1) % prices.length;
+            size = Math.min(size + 1, prices.length);
+            return oldest;
+        }
+    }
+}
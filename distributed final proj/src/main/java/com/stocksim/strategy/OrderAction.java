@@ -0,0 +1,21 @@
+package com.stocksim.strategy;
+
+import com.stocksim.data.MessageType;
+import com.stocksim.data.Order;
+
+/**
+ * Something a strategy wants the agent to send: a new order, a cancel or a
+ * replace. For cancel/replace the order carries the ID of the resting order.
+ */
+public class OrderAction {
+    private final MessageType type;
+    private final Order order;
+
+    public OrderAction(MessageType type, Order order) {
+        this.type = type;
+        this.order = order;
+    }
+
+    public MessageType getType() { return type; }
+    public Order getOrder() { return order; }
+}
@@ -0,0 +1,33 @@
+package com.stocksim.strategy;
+
+import com.stocksim.data.OrderType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The original agent behaviour: every so often pick a side, symbol, size and
+ * price completely at random. Useful as background noise in a mix. It keeps
+ * at most one order per symbol and side working and moves it around.
+ */
+public class RandomStrategy extends AbstractStrategy {
+
+    public RandomStrategy(String agentId, List<String> symbols, Random random) {
+        super(agentId, symbols, random, 0);
+    }
+
+    @Override
+    public String getName() {
+        return "random";
+    }
+
+    @Override
+    public List<OrderAction> onIdle() {
+        OrderType type = random.nextBoolean() ? OrderType.BUY : OrderType.SELL;
+        int quantity = 1 + random.nextInt(100);
+        double price = 10.0 + (190.0 * random.nextDouble());
+        String symbol = randomSymbol();
+        return Collections.singletonList(place(slot(symbol, type), symbol, type, quantity, price));
+    }
+}
@@ -0,0 +1,117 @@
+package com.stocksim.strategy;
+
+import com.stocksim.data.OrderType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays orders from a CSV tape, one line per order:
+ * <pre>symbol,side,quantity,price</pre>
+ * Blank lines and lines starting with '#' are skipped, and so is a header row.
+ * Each replay agent walks the tape on its own, starting at a different offset
+ * so several of them don't send the exact same order at the same time. A
+ * new line for a symbol and side replaces the agent's previous order there,
+ * so looping over a tape doesn't grow the book forever.
+ */
+public class ReplayStrategy extends AbstractStrategy {
+
+    private final List<TapeEntry> tape;
+    private final int batchSize;
+    private final boolean loop;
+    private int cursor;
+
+    public ReplayStrategy(String agentId, List<TapeEntry> tape, Random random, int batchSize, boolean loop) {
+        super(agentId, symbolsOf(tape), random, 0);
+        this.tape = tape;
+        this.batchSize = batchSize;
+        this.loop = loop;
+        this.cursor = random.nextInt(tape.size());
+    }
+
+    @Override
+    public String getName() {
+        return "replay";
+    }
+
+    @Override
+    public List<OrderAction> onIdle() {
+        List<OrderAction> orders = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            if (cursor >= tape.size()) {
+                if (!loop) break;
+                cursor = 0;
+            }
+            TapeEntry entry = tape.get(cursor++);
+            orders.add(place(slot(entry.symbol, entry.type), entry.symbol, entry.type, entry.quantity, entry.price));
+        }
+        return orders;
+    }
+
+    /**
+     * Reads a tape file into memory. It's loaded once per process and shared
+     * (read-only) by all the replay agents.
+     */
+    public static List<TapeEntry> loadTape(Path file) throws IOException {
+        List<TapeEntry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.toLowerCase().startsWith("symbol,")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 4) {
+                    throw new IOException("Bad tape line " + lineNumber + " in " + file + ": " + line);
+                }
+                try {
+                    entries.add(new TapeEntry(
+                            fields[0].trim(),
+                            OrderType.valueOf(fields[1].trim().toUpperCase()),
+                            Integer.parseInt(fields[2].trim()),
+                            Double.parseDouble(fields[3].trim())));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Bad tape line " + lineNumber + " in " + file + ": " + line, e);
+                }
+            }
+        }
+        if (entries.isEmpty()) {
+            throw new IOException("Replay tape " + file + " has no orders");
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    private static List<String> symbolsOf(List<TapeEntry> tape) {
+        LinkedHashSet<String> symbols = new LinkedHashSet<>();
+        for (TapeEntry entry : tape) {
+            symbols.add(entry.symbol);
+        }
+        return new ArrayList<>(symbols);
+    }
+
+    /** One order line from the tape. */
+    public static class TapeEntry {
+        private final String symbol;
+        private final OrderType type;
+        private final int quantity;
+        private final double price;
+
+        public TapeEntry(String symbol, OrderType type, int quantity, double price) {
+            this.symbol = symbol;
+            this.type = type;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+}
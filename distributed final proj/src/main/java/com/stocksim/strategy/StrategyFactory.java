@@ -0,0 +1,93 @@
+package com.stocksim.strategy;
+
+import com.stocksim.config.SimulationConfig;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds the strategy for each agent from the config. Agents get strategies
+ * in weighted round-robin order from sim.strategy.mix, and each one gets its
+ * own slice of the symbol universe (sim.agent.symbolsPerAgent, 0 = all), so
+ * a run with thousands of symbols spreads out instead of everyone trading
+ * the same three.
+ */
+public class StrategyFactory {
+
+    private final SimulationConfig config;
+    private final List<String> universe;
+    private final List<String> assignments = new ArrayList<>();
+    private List<ReplayStrategy.TapeEntry> tape;
+
+    public StrategyFactory(SimulationConfig config) throws IOException {
+        this.config = config;
+        this.universe = config.getSymbols();
+        if (universe.isEmpty()) {
+            throw new IllegalArgumentException("The symbol universe is empty");
+        }
+        for (Map.Entry<String, Integer> entry : config.getStrategyMix().entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                assignments.add(entry.getKey());
+            }
+        }
+        if (assignments.contains("replay")) {
+            String tapeFile = config.getString("sim.replay.file", null);
+            if (tapeFile == null) {
+                throw new IllegalArgumentException("The replay strategy needs sim.replay.file");
+            }
+            this.tape = ReplayStrategy.loadTape(Paths.get(tapeFile));
+        }
+    }
+
+    /**
+     * Creates the strategy for the agent with the given (0-based) index.
+     */
+    public TradingStrategy create(int agentIndex, String agentId) {
+        String name = assignments.get(agentIndex % assignments.size());
+        List<String> symbols = symbolsFor(agentIndex);
+        Random random = new Random();
+        long cooldownMs = config.getLong("sim.strategy.cooldownMs", 500);
+
+        switch (name) {
+            case "random":
+                return new RandomStrategy(agentId, symbols, random);
+            case "marketmaker":
+                return new MarketMakerStrategy(agentId, symbols, random, cooldownMs,
+                        config.getDouble("sim.marketmaker.spread", 0.002),
+                        config.getInt("sim.marketmaker.size", 50));
+            case "momentum":
+                return new MomentumStrategy(agentId, symbols, random, cooldownMs,
+                        config.getInt("sim.momentum.lookback", 10),
+                        config.getDouble("sim.momentum.threshold", 0.001),
+                        config.getInt("sim.momentum.size", 20));
+            case "meanreversion":
+                return new MeanReversionStrategy(agentId, symbols, random, cooldownMs,
+                        config.getDouble("sim.meanreversion.alpha", 0.1),
+                        config.getDouble("sim.meanreversion.threshold", 0.002),
+                        config.getInt("sim.meanreversion.size", 20));
+            case "replay":
+                return new ReplayStrategy(agentId, tape, random,
+                        config.getInt("sim.replay.batch", 1),
+                        config.getBoolean("sim.replay.loop", true));
+            default:
+                throw new IllegalArgumentException("Unknown strategy in sim.strategy.mix: " + name);
+        }
+    }
+
+    private List<String> symbolsFor(int agentIndex) {
+        int perAgent = config.getInt("sim.agent.symbolsPerAgent", 0);
+        if (perAgent <= 0 || perAgent >= universe.size()) {
+            return universe;
+        }
+        List<String> slice = new ArrayList<>(perAgent);
+        int start = (int) (((long) agentIndex * perAgent) % universe.size());
+        for (int i = 0; i < perAgent; i++) {
+            slice.add(universe.get((start + i) % universe.size()));
+        }
+        return slice;
+    }
+}
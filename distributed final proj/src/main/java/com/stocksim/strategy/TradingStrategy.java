@@ -0,0 +1,40 @@
+package com.stocksim.strategy;
+
+import com.stocksim.data.ExecutionReport;
+import com.stocksim.data.Trade;
+
+import java.util.List;
+
+/**
+ * A trading strategy decides which orders an agent sends. The agent calls it
+ * whenever market data arrives, and also on a timer every couple of seconds so
+ * strategies that quote (like the market maker) can get things going.
+ * A strategy instance belongs to one agent thread, so it doesn't need to be thread-safe.
+ */
+public interface TradingStrategy {
+
+    /** Short name used in logs and in the sim.strategy.mix config. */
+    String getName();
+
+    /** The symbols this strategy trades and wants market data for. */
+    List<String> getSymbols();
+
+    /**
+     * Called for every published trade on one of this strategy's symbols.
+     * @return The orders, cancels and replaces to send in reaction, possibly empty.
+     */
+    List<OrderAction> onTrade(Trade trade);
+
+    /**
+     * Called on the agent's idle timer, every 1-3 seconds whether or not market
+     * data arrived in between.
+     * @return The orders, cancels and replaces to send, possibly empty.
+     */
+    List<OrderAction> onIdle();
+
+    /**
+     * Called with the MarketNode's answer to every order, cancel or replace
+     * this strategy sent.
+     */
+    void onExecution(ExecutionReport report);
+}
@@ -20,6 +20,7 @@ import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
 
+import java.io.IOException;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.text.SimpleDateFormat;
@@ -36,6 +37,8 @@ public class MainUI extends Application {
     private final ObservableList<Trade> tradeData = FXCollections.observableArrayList();
     private final ObservableList<String> agentStatusData = FXCollections.observableArrayList();
     private Label marketStatusLabel;
+    // The version of the state currently on screen, so I only download changes.
+    private long shownStateVersion = -1;
 
     public static void main(String[] args) {
         launch(args);
@@ -70,7 +73,7 @@ public class MainUI extends Application {
         TableColumn<Trade, String> agentCol = new TableColumn<>("Agent ID");
         agentCol.setCellValueFactory(new PropertyValueFactory<>("agentId"));
         TableColumn<Trade, String> typeCol = new TableColumn<>("Type");
-        typeCol.setCellValueFactory(cell -> new javafx.beans.property.SimpleStringProperty(cell.getValue().getQuantity() > 0 ? "BUY" : "SELL"));
+        typeCol.setCellValueFactory(cell -> new javafx.beans.property.SimpleStringProperty(String.valueOf(cell.getValue().getSide())));
         TableColumn<Trade, String> symbolCol = new TableColumn<>("Symbol");
         symbolCol.setCellValueFactory(new PropertyValueFactory<>("stockSymbol"));
         TableColumn<Trade, Integer> qtyCol = new TableColumn<>("Qty");
@@ -115,10 +118,16 @@ public class MainUI extends Application {
         scheduler.scheduleAtFixedRate(() -> {
             try {
                 if (marketNode == null) throw new RemoteException("MarketNode not connected.");
-                SystemState state = marketNode.getState();
+                byte[] newerState = marketNode.getStateIfNewer(shownStateVersion);
+                if (newerState == null) return; // nothing changed since the last poll
+                SystemState state = SystemState.fromBytes(newerState);
+                shownStateVersion = state.getVersion();
                 Platform.runLater(() -> updateUiComponents(state));
             } catch (RemoteException e) {
+                shownStateVersion = -1; // fetch everything again once the market is back
                 Platform.runLater(this::setMarketNodeDownStatus);
+            } catch (IOException e) {
+                System.err.println("Could not read state from MarketNode: " + e.getMessage());
             }
         }, 0, 1, TimeUnit.SECONDS);
     }